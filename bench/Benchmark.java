@@ -0,0 +1,149 @@
+import hanabAI.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Microbenchmarks for the hot paths of the hanabAI engine, for each number of players from 2 to 5.
+ * Each benchmark is warmed up, then timed over several measurement rounds,
+ * and reports the mean time and the bytes allocated per operation
+ * (from the allocation counter of the running thread, as the JMH GC profiler does).
+ * The states used are recorded from games of BasicAgents with seeded deals and seeded agents, so runs are repeatable.
+ * See BASELINE.md for how to compile and run, and for reference numbers.
+ **/
+public class Benchmark{
+
+  private static final int GAMES = 200;
+  private static final int WARMUP_ROUNDS = 5;
+  private static final int ROUNDS = 5;
+  private static final long ROUND_NANOS = 200000000L;
+
+  //consumes results, so the work cannot be optimised away
+  private static volatile long sink;
+
+  //an operation to be timed, returning a value to consume
+  private interface Op{long run(int i) throws Exception;}
+
+  //the recorded games for one number of players
+  private static class Games{
+    List<State> states = new ArrayList<State>();
+    List<Action> actions = new ArrayList<Action>();
+    byte[] deals;
+    List<Action[]> games = new ArrayList<Action[]>();
+  }
+
+  private static Games record(int players) throws IllegalActionException{
+    Games g = new Games();
+    g.deals = Deck.deals(players*1000L, GAMES);
+    for(int i = 0; i<GAMES; i++){
+      Agent[] agents = agents(players, i);
+      Deck deck = new Deck(g.deals, i);
+      State s = new State(names(agents), deck);
+      List<Action> moves = new ArrayList<Action>();
+      while(!s.gameOver()){
+        int p = s.getNextPlayer();
+        Action a = agents[p].doAction(s.hideHand(p));
+        g.states.add(s);
+        g.actions.add(a);
+        moves.add(a);
+        s = s.nextState(a, deck);
+      }
+      g.games.add(moves.toArray(new Action[0]));
+    }
+    return g;
+  }
+
+  //seeded agents for the deal with the given index, so its game is the same in every run
+  private static Agent[] agents(int players, int deal){
+    Agent[] agents = new Agent[players];
+    for(int i = 0; i<players; i++) agents[i] = new agents.BasicAgent(8L*deal+i);
+    return agents;
+  }
+
+  private static String[] names(Agent[] agents){
+    String[] names = new String[agents.length];
+    for(int i = 0; i<names.length; i++) names[i] = agents[i].toString();
+    return names;
+  }
+
+  //times an operation, where each call of op performs opsPerCall operations
+  private static void measure(String name, int players, int opsPerCall, Op op) throws Exception{
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long tid = Thread.currentThread().getId();
+    int i = 0;
+    double best = Double.MAX_VALUE, total = 0;
+    long bytes = 0, ops = 0;
+    for(int round = 0; round<WARMUP_ROUNDS+ROUNDS; round++){
+      long allocStart = mx.getThreadAllocatedBytes(tid);
+      long start = System.nanoTime(), end = start+ROUND_NANOS, now, calls = 0, acc = 0;
+      do{
+        for(int k = 0; k<64; k++) acc+=op.run(i++);
+        calls+=64;
+        now = System.nanoTime();
+      }while(now<end);
+      sink+=acc;
+      if(round<WARMUP_ROUNDS) continue;
+      double ns = (double)(now-start)/(calls*opsPerCall);
+      best = Math.min(best, ns);
+      total+=ns;
+      bytes+=mx.getThreadAllocatedBytes(tid)-allocStart;
+      ops+=calls*opsPerCall;
+    }
+    System.out.printf("%-16s %d  %12.1f ns/op  %12.1f ns/op (best)  %10.1f B/op%n", name, players, total/ROUNDS, best, (double)bytes/ops);
+  }
+
+  /**
+   * Runs every benchmark. The optional arguments are the numbers of players to run (default 2 3 4 5).
+   **/
+  public static void main(String[] args) throws Exception{
+    int[] counts = {2,3,4,5};
+    if(args.length>0){
+      counts = new int[args.length];
+      for(int i = 0; i<args.length; i++) counts[i] = Integer.parseInt(args[i]);
+    }
+    System.out.printf("%-16s %s  %12s        %12s               %10s%n", "benchmark", "n", "mean", "best", "alloc");
+    for(final int n: counts){
+      final Games g = record(n);
+      final int size = g.states.size();
+      measure("nextState", n, 1, new Op(){
+        //replays whole games, one move per call, so the deck is consumed in order
+        int game = -1, move = 0; State s; Deck deck; Action[] moves;
+        public long run(int i) throws Exception{
+          if(game==-1 || move==moves.length){
+            game = (game+1)%GAMES;
+            move = 0;
+            moves = g.games.get(game);
+            deck = new Deck(g.deals, game);
+            s = new State(g.states.get(0).getPlayers(), deck);
+          }
+          s = s.nextState(moves[move++], deck);
+          return s.getHintTokens();
+        }
+      });
+      measure("clone", n, 1, new Op(){
+        public long run(int i){return ((State)g.states.get(i%size).clone()).getOrder();}
+      });
+      measure("hideHand", n, 1, new Op(){
+        public long run(int i) throws Exception{State s = g.states.get(i%size); return s.hideHand(s.getNextPlayer()).getOrder();}
+      });
+      measure("legalAction", n, 1, new Op(){
+        public long run(int i) throws Exception{return g.states.get(i%size).legalAction(g.actions.get(i%size))?1:0;}
+      });
+      measure("getScore", n, 1, new Op(){
+        public long run(int i){return g.states.get(i%size).getScore();}
+      });
+      measure("gameOver", n, 1, new Op(){
+        public long run(int i){return g.states.get(i%size).gameOver()?1:0;}
+      });
+      measure("shuffledDeck", n, 1, new Op(){
+        public long run(int i){return Card.shuffledDeck().size();}
+      });
+      measure("Deck(seed)", n, 1, new Op(){
+        public long run(int i){return new Deck(i).getCardIndex(0);}
+      });
+      measure("play(Basic)", n, 1, new Op(){
+        public long run(int i){return new Hanabi(agents(n, i%GAMES), new Deck(g.deals, i%GAMES)).play();}
+      });
+    }
+  }
+}
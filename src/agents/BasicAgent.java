@@ -11,27 +11,44 @@ import hanabAI.*;
  *   with probability 0.4 give a colour hint to the next player with a required card,
  *   with probability 0.4 give a number hint to the next player with a required card,
  *   otherwise discard a random card.
+ * The probabilities, and the order the rules are tried in, are parameters that can be tuned (see Tunable).
  *@author Tim French 
  **/
-public class BasicAgent implements Agent{
+public class BasicAgent implements Agent, Tunable{
 
   private Colour[] colours;
   private int[] values;
   private boolean firstAction = true;
   private int numPlayers;
   private int index;
+  private java.util.Random rand;
+
+  //the parameters: the probabilities, then a priority for each rule, where rules with lower priority are tried first
+  private static final int GUESS = 0, COLOUR_HINT = 1, RANDOM_COLOUR_HINT = 2, RULES = 3;
+  private static final String[] NAMES = {"guessPerFuse", "colourHint", "randomColourHint",
+    "playKnownPriority", "discardKnownPriority", "hintPriority", "playGuessPriority", "discardGuessPriority", "hintRandomPriority"};
+  private static final double[] DEFAULTS = {0.05, 0.5, 0.5, 0.0, 0.2, 0.4, 0.6, 0.8, 1.0};
+  private double[] parameters = DEFAULTS.clone();
+  private int[] order = {0,1,2,3,4,5};
 
   /**
    * Default constructor, does nothing.
    * **/
-  public BasicAgent(){}
+  public BasicAgent(){rand = new java.util.Random();}
+
+  /**
+   * Creates an agent whose random choices are determined by a seed,
+   * so games with the same deal and seeds can be repeated.
+   * @param seed the seed of the agent's random number generator
+   * **/
+  public BasicAgent(long seed){rand = new java.util.Random(seed);}
 
   /**
    * Initialises variables on the first call to do action.
    * @param s the State of the game at the first action
    **/
   public void init(State s){
-    numPlayers = s.getPlayers().length;
+    numPlayers = s.getPlayerCount();
     if(numPlayers>3){
       colours = new Colour[4];
       values = new int[4];
@@ -73,12 +90,8 @@ public class BasicAgent implements Agent{
     //get any hints
     try{
       getHints(s);
-      Action a = playKnown(s);
-      if(a==null) a = discardKnown(s);
-      if(a==null) a = hint(s);
-      if(a==null) a = playGuess(s);
-      if(a==null) a = discardGuess(s);
-      if(a==null) a = hintRandom(s);
+      Action a = null;
+      for(int i = 0; i<order.length && a==null; i++) a = rule(order[i], s);
       return a;
     }
     catch(IllegalActionException e){
@@ -87,16 +100,61 @@ public class BasicAgent implements Agent{
     }
   }
 
+  //applies one of the six rules, numbered in the default order
+  private Action rule(int r, State s) throws IllegalActionException{
+    switch(r){
+      case 0: return playKnown(s);
+      case 1: return discardKnown(s);
+      case 2: return hint(s);
+      case 3: return playGuess(s);
+      case 4: return discardGuess(s);
+      default: return hintRandom(s);
+    }
+  }
+
+  /**@return the names of the parameters**/
+  public String[] getParameterNames(){return NAMES.clone();}
+
+  /**@return 0 for every parameter**/
+  public double[] getLowerBounds(){return new double[NAMES.length];}
+
+  /**@return 1 for every parameter**/
+  public double[] getUpperBounds(){
+    double[] upper = new double[NAMES.length];
+    java.util.Arrays.fill(upper, 1);
+    return upper;
+  }
+
+  /**@return a copy of the parameters**/
+  public double[] getParameters(){return parameters.clone();}
+
+  /**
+   * Sets the probabilities of a guessed play for each fuse token, and of a colour rather than a value hint,
+   * and the priorities of the rules (see getParameterNames)
+   * @param p the parameters, each between 0 and 1
+   * @throws IllegalArgumentException if the wrong number of values is given, or a value is out of bounds
+   **/
+  public void setParameters(double[] p) throws IllegalArgumentException{
+    if(p==null || p.length!=NAMES.length) throw new IllegalArgumentException("Expected "+NAMES.length+" parameters");
+    for(double v: p) if(!(v>=0 && v<=1)) throw new IllegalArgumentException("Parameter out of bounds: "+v);
+    parameters = p.clone();
+    //insertion sort of the rules by priority, keeping the default order for ties
+    for(int i = 0; i<order.length; i++){
+      int r = i, j = i;
+      for(; j>0 && parameters[RULES+order[j-1]]>parameters[RULES+r]; j--) order[j] = order[j-1];
+      order[j] = r;
+    }
+  }
+
   //updates colours and values from hints received
   public void getHints(State s){
     try{
-      State t = (State) s.clone();
-      for(int i = 0; i<Math.min(numPlayers-1,s.getOrder());i++){
-        Action a = t.getPreviousAction();
+      for(int t = Math.max(0,s.getOrder()-(numPlayers-1)); t<s.getOrder(); t++){
+        Action a = s.getHistoryAction(t);
         if((a.getType()==ActionType.HINT_COLOUR || a.getType() == ActionType.HINT_VALUE) && a.getHintReceiver()==index){
-          boolean[] hints = t.getPreviousAction().getHintedCards();
-          for(int j = 0; j<hints.length; j++){
-            if(hints[j]){
+          int hints = a.getHintMask();
+          for(int j = 0; j<colours.length; j++){
+            if((hints>>j&1)==1){
               if(a.getType()==ActionType.HINT_COLOUR) 
                 colours[j] = a.getColour();
               else
@@ -104,7 +162,6 @@ public class BasicAgent implements Agent{
             }
           }
         } 
-        t = t.getPreviousState();
       }
     }
     catch(IllegalActionException e){e.printStackTrace();}
@@ -112,9 +169,7 @@ public class BasicAgent implements Agent{
 
   //returns the value of the next playable card of the given colour
   public int playable(State s, Colour c){
-    java.util.Stack<Card> fw = s.getFirework(c);
-    if (fw.size()==5) return -1;
-    else return fw.size()+1;
+    return s.getNextPlayable(c);
   }
 
   //plays the first card known to be playable.
@@ -150,24 +205,18 @@ public class BasicAgent implements Agent{
     if(s.getHintTokens()>0){
       for(int i = 1; i<numPlayers; i++){
         int hintee = (index+i)%numPlayers;
-        Card[] hand = s.getHand(hintee);
-        for(int j = 0; j<hand.length; j++){
-          Card c = hand[j];
+        for(int j = 0; j<s.getHandSize(hintee); j++){
+          Card c = s.getCard(hintee,j);
           if(c!=null && c.getValue()==playable(s,c.getColour())){
             //flip coin
-            if(Math.random()>0.5){//give colour hint
-              boolean[] col = new boolean[hand.length];
-              for(int k = 0; k< col.length; k++){
-                col[k]=c.getColour().equals((hand[k]==null?null:hand[k].getColour()));
-              }
-              return new Action(index,toString(),ActionType.HINT_COLOUR,hintee,col,c.getColour());
+            ActionSpace space = s.getActionSpace();
+            if(rand.nextDouble()>1-parameters[COLOUR_HINT]){//give colour hint
+              int col = s.getHintMask(hintee, c.getColour());
+              return s.getAction(space.colourHint(index,hintee,c.getColour(),col));
             }
             else{//give value hint
-              boolean[] val = new boolean[hand.length];
-              for(int k = 0; k< val.length; k++){
-                val[k]=c.getValue() == (hand[k]==null?-1:hand[k].getValue());
-              }
-              return new Action(index,toString(),ActionType.HINT_VALUE,hintee,val,c.getValue());
+              int val = s.getHintMask(hintee, c.getValue());
+              return s.getAction(space.valueHint(index,hintee,c.getValue(),val));
             }
           }
         }
@@ -176,11 +225,10 @@ public class BasicAgent implements Agent{
     return null;
   }
 
-  //with probability 0.05 for each fuse token, play a random card 
+  //with probability 0.05 (by default) for each fuse token, play a random card 
   public Action playGuess(State s) throws IllegalActionException{
-    java.util.Random rand = new java.util.Random();
     for(int i = 0; i<s.getFuseTokens(); i++){
-      if(rand.nextDouble()<0.05){
+      if(rand.nextDouble()<parameters[GUESS]){
         int cardIndex = rand.nextInt(colours.length);
         colours[cardIndex] = null;
         values[cardIndex] = 0;
@@ -193,7 +241,6 @@ public class BasicAgent implements Agent{
   //discard a random card
   public Action discardGuess(State s) throws IllegalActionException{
     if (s.getHintTokens() != 8) {
-      java.util.Random rand = new java.util.Random();
       int cardIndex = rand.nextInt(colours.length);
       colours[cardIndex] = null;
       values[cardIndex] = 0;
@@ -208,27 +255,19 @@ public class BasicAgent implements Agent{
   public Action hintRandom(State s) throws IllegalActionException{
     if(s.getHintTokens()>0){
         int hintee = (index+1)%numPlayers;
-        Card[] hand = s.getHand(hintee);
-
-        java.util.Random rand = new java.util.Random();
-        int cardIndex = rand.nextInt(hand.length);
-        while(hand[cardIndex]==null) cardIndex = rand.nextInt(hand.length);
-        Card c = hand[cardIndex];
+        int handSize = s.getHandSize(hintee);
+        int cardIndex = rand.nextInt(handSize);
+        while(s.getCard(hintee,cardIndex)==null) cardIndex = rand.nextInt(handSize);
+        Card c = s.getCard(hintee,cardIndex);
 
-        if(Math.random()>0.5){//give colour hint
-          boolean[] col = new boolean[hand.length];
-          for(int k = 0; k< col.length; k++){
-            col[k]=c.getColour().equals((hand[k]==null?null:hand[k].getColour()));
-          }
-          return new Action(index,toString(),ActionType.HINT_COLOUR,hintee,col,c.getColour());
+        ActionSpace space = s.getActionSpace();
+        if(rand.nextDouble()>1-parameters[RANDOM_COLOUR_HINT]){//give colour hint
+          int col = s.getHintMask(hintee, c.getColour());
+          return s.getAction(space.colourHint(index,hintee,c.getColour(),col));
         }
         else{//give value hint
-          boolean[] val = new boolean[hand.length];
-          for(int k = 0; k< val.length; k++){
-            if (hand[k] == null) continue;
-            val[k]=c.getValue() == (hand[k]==null?-1:hand[k].getValue());
-          }
-          return new Action(index,toString(),ActionType.HINT_VALUE,hintee,val,c.getValue());
+          int val = s.getHintMask(hintee, c.getValue());
+          return s.getAction(space.valueHint(index,hintee,c.getValue(),val));
         }
 
       }
@@ -0,0 +1,71 @@
+package agents;
+import hanabAI.*;
+
+
+/**
+ * A reflex agent using the rules of BasicAgent, with a HandKnowledge tracker for its own cards.
+ * The tracker keeps every hint, positive and negative, for as long as a card is held,
+ * so the agent plays cards that are certainly playable and discards cards that are certainly dead,
+ * where BasicAgent only acts on a card whose colour and value it has been told.
+ * It is the stronger of the two, and BasicAgent is kept unchanged as the reference agent.
+ **/
+public class KnowledgeAgent extends BasicAgent{
+
+  private HandKnowledge knowledge;
+
+  /**
+   * Default constructor, does nothing.
+   * **/
+  public KnowledgeAgent(){super();}
+
+  /**
+   * Creates an agent whose random choices are determined by a seed,
+   * so games with the same deal and seeds can be repeated.
+   * @param seed the seed of the agent's random number generator
+   * **/
+  public KnowledgeAgent(long seed){super(seed);}
+
+  /**
+   * Initialises variables on the first call to do action.
+   * @param s the State of the game at the first action
+   **/
+  public void init(State s){
+    super.init(s);
+    knowledge = new HandKnowledge(s.getPlayerCount());
+  }
+
+  /**
+   * Returns the name Knowledge.
+   * @return the String "Knowledge"
+   * */
+  public String toString(){return "Knowledge";}
+
+  //updates the knowledge of the cards in each hand from the hints given
+  public void getHints(State s){
+    knowledge.update(s);
+  }
+
+  //plays the first card known to be playable.
+  public Action playKnown(State s) throws IllegalActionException{
+    int index = s.getNextPlayer();
+    for(int i = 0; i<s.getHandSize(index); i++){
+      if(knowledge.isDefinitelyPlayable(s,index,i)){
+        return new Action(index, toString(), ActionType.PLAY,i);
+      }
+    }
+    return null;
+  }
+
+  //discards the first card known to be unplayable.
+  public Action discardKnown(State s) throws IllegalActionException{
+    int index = s.getNextPlayer();
+    if (s.getHintTokens() != 8) {
+      for(int i = 0; i<s.getHandSize(index); i++){
+        if(knowledge.isDefinitelyDead(s,index,i)){
+          return new Action(index, toString(), ActionType.DISCARD,i);
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,449 @@
+package agents;
+import hanabAI.*;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+
+/**
+ * An information set Monte Carlo tree search agent for playing Hanabi.
+ * Each iteration samples a determinization of the agent's hidden hand and the deck (see Determinizer),
+ * then descends a single tree of moves by every player, choosing among the moves legal in that determinization
+ * by UCB1 with availability counts. The game is then finished with a fast rollout policy on a PackedState,
+ * which plays cards its holder knows are playable, hints playable cards, and discards cards that are known to be dead, or least known.
+ * Rollouts track the hints given, starting from the public knowledge of every hand (see HandKnowledge), so hints have value in the search.
+ * The search is tree parallel: a number of threads share the tree, with lock-free node statistics and a virtual loss,
+ * under a time budget or iteration budget for each move.
+ * The subtree reached by the moves made since the agent's last turn is kept for the next search.
+ * As this agent uses threads, it is intended as a benchmark opponent and a test of simulation speed,
+ * rather than as a tournament entry.
+ **/
+public class MCTSAgent implements Agent{
+
+  //the exploration constant, for rewards scaled to between 0 and 1
+  private static final double EXPLORATION = 0.5;
+  //the most moves a game can take
+  private static final int MAX_DEPTH = 256;
+  private static final Colour[] COLOURS = Colour.values();
+
+  private static final ExecutorService SEARCHERS = Executors.newCachedThreadPool(new ThreadFactory(){
+    public Thread newThread(Runnable r){
+      Thread t = new Thread(r, "mcts-search");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  private int threads;
+  private long moveNanos;
+  private int iterations;
+  private SplittableRandom random;
+  private HandKnowledge knowledge;
+  //the root of the tree, and the order of the state it represents
+  private Node root;
+  private int rootTurn;
+
+  /**
+   * Creates an agent that searches for 100 milliseconds per move with a thread for each processor.
+   **/
+  public MCTSAgent(){
+    this(Runtime.getRuntime().availableProcessors(), 100, 0);
+  }
+
+  /**
+   * Creates an agent with the given search budget. The search stops when either budget is reached.
+   * @param threads the number of threads searching
+   * @param moveMillis the time for each move in milliseconds, or 0 for no time limit
+   * @param iterations the number of iterations for each move, or 0 for no limit
+   * @throws IllegalArgumentException if there are no threads, or neither budget is set
+   **/
+  public MCTSAgent(int threads, long moveMillis, int iterations) throws IllegalArgumentException{
+    this(threads, moveMillis, iterations, new SplittableRandom());
+  }
+
+  /**
+   * Creates an agent with the given search budget, whose samples are determined by a seed.
+   * With one thread and no time limit, games with the same deal and seeds are repeated exactly.
+   * @param threads the number of threads searching
+   * @param moveMillis the time for each move in milliseconds, or 0 for no time limit
+   * @param iterations the number of iterations for each move, or 0 for no limit
+   * @param seed the seed of the agent's random number generator
+   * @throws IllegalArgumentException if there are no threads, or neither budget is set
+   **/
+  public MCTSAgent(int threads, long moveMillis, int iterations, long seed) throws IllegalArgumentException{
+    this(threads, moveMillis, iterations, new SplittableRandom(seed));
+  }
+
+  private MCTSAgent(int threads, long moveMillis, int iterations, SplittableRandom random) throws IllegalArgumentException{
+    if(threads<1 || moveMillis<0 || iterations<0 || (moveMillis==0 && iterations==0))
+      throw new IllegalArgumentException("incorrect search budget");
+    this.threads = threads;
+    this.moveNanos = moveMillis*1000000L;
+    this.iterations = iterations;
+    this.random = random;
+  }
+
+  /**
+   * Returns the name MCTS.
+   * @return the String "MCTS"
+   * */
+  public String toString(){return "MCTS";}
+
+  /**
+   * Searches from the current state, and makes the move visited most often.
+   * @param s the current state of the game, with the agent as observer and next player
+   * @return the action the player takes.
+   **/
+  public Action doAction(State s){
+    try{
+      if(knowledge==null) knowledge = new HandKnowledge(s.getPlayerCount());
+      knowledge.update(s);
+      reuse(s);
+      int players = s.getPlayerCount();
+      int handSize = s.getHandSize(0);
+      int[] masks = new int[5*players];
+      for(int p = 0; p<players; p++)
+        for(int i = 0; i<handSize; i++) masks[5*p+i] = knowledge.getPossible(p,i);
+      long deadline = moveNanos==0?Long.MAX_VALUE:System.nanoTime()+moveNanos;
+      AtomicInteger count = new AtomicInteger();
+      Future<?>[] futures = new Future<?>[threads-1];
+      for(int t = 0; t<futures.length; t++)
+        futures[t] = SEARCHERS.submit(new Search(s, masks, random.split(), deadline, count));
+      new Search(s, masks, random.split(), deadline, count).run();
+      for(Future<?> f: futures) f.get();
+      int[] legal = new int[s.getActionSpace().maxLegalMoves()];
+      int n = s.getLegalMoves(legal);
+      int best = legal[0], most = -1;
+      for(int i = 0; i<n; i++){
+        Node c = root.find(legal[i]);
+        if(c!=null && c.visits>most){
+          most = c.visits;
+          best = legal[i];
+        }
+      }
+      return s.getAction(best);
+    }
+    catch(IllegalActionException e){
+      e.printStackTrace();
+      throw new RuntimeException("Something has gone very wrong");
+    }
+    catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Search interrupted");
+    }
+    catch(ExecutionException e){
+      throw new RuntimeException("Search failed", e.getCause());
+    }
+  }
+
+  //moves the root down the tree along the moves made since the last search,
+  //or starts a new tree if there is none, or the state is from an earlier turn or a new game
+  private void reuse(State s) throws IllegalActionException{
+    Node node = root;
+    if(s.getOrder()<rootTurn) node = null;
+    for(int t = rootTurn; node!=null && t<s.getOrder(); t++)
+      node = node.find(s.getActionTable().getMove(s.getHistoryAction(t)));
+    root = (node==null || root==null)?new Node(-1, null):node;
+    rootTurn = s.getOrder();
+  }
+
+  //the search run by each thread
+  private class Search implements Runnable{
+    private Node top;
+    private long deadline;
+    private AtomicInteger count;
+    private SplittableRandom rng;
+    private Determinizer determinizer;
+    private PackedState packed;
+    private Simulation sim;
+    private int[] masks;
+    private int[] moves;
+    private int[] unexpanded;
+    //the legal moves of the current node, as a bitset over the action space
+    private long[] legal;
+    private Node[] path = new Node[MAX_DEPTH];
+
+    Search(State s, int[] masks, SplittableRandom rng, long deadline, AtomicInteger count){
+      this.top = root;
+      this.deadline = deadline;
+      this.count = count;
+      this.rng = rng;
+      this.masks = masks;
+      determinizer = new Determinizer(rng);
+      determinizer.prepare(s, knowledge);
+      packed = new PackedState(s);
+      ActionSpace space = s.getActionSpace();
+      sim = new Simulation(space);
+      moves = new int[space.maxLegalMoves()];
+      unexpanded = new int[space.maxLegalMoves()];
+      legal = new long[(space.size()+63)/64];
+    }
+
+    public void run(){
+      while(System.nanoTime()<deadline && (iterations==0 || count.getAndIncrement()<iterations)) iterate();
+    }
+
+    //selects, expands, rolls out and backs up one determinization
+    private void iterate(){
+      determinizer.sample(packed);
+      sim.reset(packed, masks);
+      Node node = top;
+      int depth = 0;
+      while(!sim.gameOver()){
+        int n = sim.legalMoves(moves);
+        for(int i = 0; i<n; i++) legal[moves[i]>>6]|=1L<<moves[i];
+        Node best = null;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for(Node c = node.child; c!=null; c = c.sibling){
+          if((legal[c.move>>6]>>>c.move&1)==0) continue;
+          legal[c.move>>6]&=~(1L<<c.move);
+          int avails = Node.AVAILS.incrementAndGet(c);
+          int visits = c.visits;
+          double value = visits==0?Double.MAX_VALUE:
+            c.reward/(25.0*visits)+EXPLORATION*Math.sqrt(Math.log(avails)/visits);
+          if(value>bestValue){
+            bestValue = value;
+            best = c;
+          }
+        }
+        int u = 0;
+        for(int i = 0; i<n; i++){
+          if((legal[moves[i]>>6]>>>moves[i]&1)==0) continue;
+          legal[moves[i]>>6]&=~(1L<<moves[i]);
+          unexpanded[u++] = moves[i];
+        }
+        if(u>0) best = node.add(unexpanded[rng.nextInt(u)]);
+        Node.VISITS.incrementAndGet(best);
+        path[depth++] = best;
+        sim.apply(best.move);
+        node = best;
+        if(u>0) break;
+      }
+      while(!sim.gameOver()) sim.apply(sim.policy(rng));
+      int score = sim.getScore();
+      for(int d = 0; d<depth; d++) Node.REWARD.addAndGet(path[d], score);
+    }
+  }
+
+  //a node of the search tree, for the move that leads to it
+  private static final class Node{
+    static final AtomicIntegerFieldUpdater<Node> VISITS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+    static final AtomicIntegerFieldUpdater<Node> AVAILS = AtomicIntegerFieldUpdater.newUpdater(Node.class, "avails");
+    static final AtomicLongFieldUpdater<Node> REWARD = AtomicLongFieldUpdater.newUpdater(Node.class, "reward");
+    static final AtomicReferenceFieldUpdater<Node,Node> CHILD = AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "child");
+
+    final int move;
+    //the next child of the same parent
+    final Node sibling;
+    //the first child, children are added to the front
+    volatile Node child;
+    //the number of times the node has been selected, the number of times it was legal, and the sum of the scores
+    volatile int visits;
+    volatile int avails;
+    volatile long reward;
+
+    Node(int move, Node sibling){
+      this.move = move;
+      this.sibling = sibling;
+    }
+
+    Node find(int move){
+      for(Node c = child; c!=null; c = c.sibling) if(c.move==move) return c;
+      return null;
+    }
+
+    //adds a child for the move, unless another thread already has
+    Node add(int move){
+      while(true){
+        Node head = child;
+        for(Node c = head; c!=null; c = c.sibling) if(c.move==move) return c;
+        Node n = new Node(move, head);
+        if(CHILD.compareAndSet(this, head, n)) return n;
+      }
+    }
+  }
+
+  //a determinized game, with the hints each player has been given about their own cards
+  private static final class Simulation{
+    private ActionSpace space;
+    private int players;
+    private int handSize;
+    private PackedState p;
+    //the possible identities of each card, indexed by 5*player+position
+    private int[] masks = new int[25];
+    private int[] discarded = new int[Card.IDENTITIES];
+
+    Simulation(ActionSpace space){
+      this.space = space;
+      players = space.getPlayers();
+      handSize = space.getHandSize();
+    }
+
+    //starts a simulation from a determinization, which is then modified
+    void reset(PackedState state, int[] knowledge){
+      p = state;
+      System.arraycopy(knowledge, 0, masks, 0, knowledge.length);
+      for(int i = 0; i<Card.IDENTITIES; i++) discarded[i] = 0;
+      for(int i = 0; i<p.getDiscardSize(); i++) discarded[p.getDiscard(i)]++;
+    }
+
+    boolean gameOver(){return p.gameOver();}
+
+    int getScore(){return p.getScore();}
+
+    //writes the legal moves, in the same order as State.getLegalMoves
+    int legalMoves(int[] buffer){
+      int player = p.getNextPlayer();
+      int n = 0;
+      for(int i = 0; i<handSize; i++) if(p.getCard(player,i)!=PackedState.EMPTY) buffer[n++] = space.play(player,i);
+      if(p.getHintTokens()<8)
+        for(int i = 0; i<handSize; i++) if(p.getCard(player,i)!=PackedState.EMPTY) buffer[n++] = space.discard(player,i);
+      if(p.getHintTokens()>0){
+        for(int k = 1; k<players; k++){
+          int r = (player+k)%players;
+          for(int c = 0; c<5; c++){
+            int mask = p.colourMask(r,c);
+            if(mask!=0) buffer[n++] = colourHint(player, r, c, mask);
+          }
+          for(int v = 1; v<=5; v++){
+            int mask = p.valueMask(r,v);
+            if(mask!=0) buffer[n++] = valueHint(player, r, v, mask);
+          }
+        }
+      }
+      return n;
+    }
+
+    //the move for a colour hint, which is only given to other players
+    int colourHint(int player, int receiver, int colour, int mask){
+      try{return space.colourHint(player, receiver, COLOURS[colour], mask);}
+      catch(IllegalActionException e){
+        e.printStackTrace();
+        throw new RuntimeException("Something has gone very wrong");
+      }
+    }
+
+    //the move for a value hint, which is only given to other players
+    int valueHint(int player, int receiver, int value, int mask){
+      try{return space.valueHint(player, receiver, value, mask);}
+      catch(IllegalActionException e){
+        e.printStackTrace();
+        throw new RuntimeException("Something has gone very wrong");
+      }
+    }
+
+    void apply(int move){
+      int player = p.getNextPlayer();
+      try{
+        switch(space.getType(move)){
+          case PLAY:
+            int pos = space.getPosition(move);
+            int id = p.getCard(player,pos);
+            if(p.getFireworkHeight(id/5)!=id%5) discarded[id]++;
+            masks[5*player+pos] = p.getDeckSize()>0?HandKnowledge.ALL:0;
+            p.play(pos);
+            break;
+          case DISCARD:
+            pos = space.getPosition(move);
+            discarded[p.getCard(player,pos)]++;
+            masks[5*player+pos] = p.getDeckSize()>0?HandKnowledge.ALL:0;
+            p.discard(pos);
+            break;
+          case HINT_COLOUR:
+            hint(space.getReceiver(move), space.getMask(move), HandKnowledge.colourMask(space.getColour(move)));
+            p.hint();
+            break;
+          default:
+            hint(space.getReceiver(move), space.getMask(move), HandKnowledge.valueMask(space.getValue(move)));
+            p.hint();
+        }
+      }
+      catch(IllegalActionException e){//cannot occur, as every card is known
+        e.printStackTrace();
+        throw new RuntimeException("Something has gone very wrong");
+      }
+    }
+
+    private void hint(int receiver, int positions, int identities){
+      for(int i = 0; i<handSize; i++) masks[5*receiver+i]&=((positions>>i&1)==1)?identities:~identities;
+    }
+
+    //the identities that can be played
+    private int playable(){
+      int mask = 0;
+      for(int c = 0; c<5; c++){
+        int h = p.getFireworkHeight(c);
+        if(h<5) mask|=1<<(5*c+h);
+      }
+      return mask;
+    }
+
+    //the identities that can no longer score
+    private int dead(){
+      int mask = 0;
+      for(int c = 0; c<5; c++){
+        int h = p.getFireworkHeight(c);
+        int lost = h+1;
+        while(lost<=5 && discarded[5*c+lost-1]<Card.count(5*c+lost-1)) lost++;
+        mask|=HandKnowledge.deadValues(h, lost)<<(5*c);
+      }
+      return mask;
+    }
+
+    //the rollout policy: play a card known to be playable, hint a playable card, discard a dead or the least known card, or hint
+    int policy(SplittableRandom rng){
+      int player = p.getNextPlayer();
+      int playable = playable();
+      for(int i = 0; i<handSize; i++){
+        int m = masks[5*player+i];
+        if(m!=0 && (m&~playable)==0) return space.play(player,i);
+      }
+      if(p.getHintTokens()>0){
+        for(int k = 1; k<players; k++){
+          int r = (player+k)%players;
+          for(int i = 0; i<handSize; i++){
+            int id = p.getCard(r,i);
+            int m = masks[5*r+i];
+            if(id<0 || (playable>>id&1)==0 || (m&~playable)==0) continue;
+            int value = id%5+1;
+            if((m&~HandKnowledge.valueMask(value))!=0) return valueHint(player, r, value, p.valueMask(r,value));
+            return colourHint(player, r, id/5, p.colourMask(r,id/5));
+          }
+        }
+      }
+      if(p.getHintTokens()<8){
+        int dead = dead();
+        int chop = -1, most = -1;
+        for(int i = 0; i<handSize; i++){
+          int m = masks[5*player+i];
+          if(p.getCard(player,i)==PackedState.EMPTY) continue;
+          if((m&~dead)==0) return space.discard(player,i);
+          if(Integer.bitCount(m)>most){
+            most = Integer.bitCount(m);
+            chop = i;
+          }
+        }
+        if(chop!=-1) return space.discard(player,chop);
+      }
+      if(p.getHintTokens()>0){
+        int start = rng.nextInt(players-1);
+        for(int k = 0; k<players-1; k++){
+          int r = (player+1+(start+k)%(players-1))%players;
+          for(int i = 0; i<handSize; i++){
+            int id = p.getCard(r,i);
+            if(id>=0) return valueHint(player, r, id%5+1, p.valueMask(r,id%5+1));
+          }
+        }
+      }
+      for(int i = 0; i<handSize; i++) if(p.getCard(player,i)!=PackedState.EMPTY) return space.play(player,i);
+      return space.play(player,0);
+    }
+  }
+}
@@ -7,27 +7,35 @@ package hanabAI;
  **/
 public class Action{
   //the player performing the action
-  private int player;
+  private final int player;
   //the player's name (for nice formatting)
-  private String playerName;
+  private final String playerName;
   //The type of action
-  private ActionType type;
+  private final ActionType type;
   //The position of the card played/discarded
-  private int card;
+  private final int card;
   //The player recieving the hint, if the action is a hint
-  private int hintee;
-  //The cards hinted at, if the action is a hint
-  private boolean[] cards;
+  private final int hintee;
+  //The cards hinted at, if the action is a hint: bit i is set if the ith card is hinted
+  private final int cards;
+  //The number of cards in the hintee's hand, if the action is a hint
+  private final int handSize;
   //The Colour hinted, if the action is a colour hint
-  private Colour colour;
+  private final Colour colour;
   //The value hinted, if the action is a value hint.
-  private int value;
+  private final int value;
 
   //common constructor for all actions
-  private Action(int player, String playerName, ActionType type){
+  private Action(int player, String playerName, ActionType type, int card, int hintee, int cards, int handSize, Colour colour, int value){
     this.player = player;
     this.playerName = playerName;
     this.type = type;
+    this.card = card;
+    this.hintee = hintee;
+    this.cards = cards;
+    this.handSize = handSize;
+    this.colour = colour;
+    this.value = value;
   }
 
   /**Constructor to create Play or Discard actions
@@ -38,9 +46,7 @@ public class Action{
    * @throws IllegalActionException if the wrong ActionType is given
    * */
   public Action(int player, String playerName, ActionType type, int pos) throws IllegalActionException{
-    this(player, playerName, type);
-    if(type != ActionType.PLAY && type!= ActionType.DISCARD) throw new IllegalActionException("Wrong parameters for action type");
-    card = pos;
+    this(player, playerName, check(type, ActionType.PLAY, ActionType.DISCARD), pos, 0, 0, 0, null, 0);
   }
 
   /**Constructor to create Play or Discard actions
@@ -53,11 +59,7 @@ public class Action{
    * @throws IllegalActionException if the wrong ActionType is given
    * */
   public Action(int player, String playerName, ActionType type, int hintReceiver, boolean[] cards, Colour hint) throws IllegalActionException{
-    this(player, playerName, type);
-    if(type != ActionType.HINT_COLOUR) throw new IllegalActionException("Wrong parameters for action type");
-    this.hintee = hintReceiver;
-    this.cards = cards;
-    this.colour = hint;
+    this(player, playerName, check(type, ActionType.HINT_COLOUR, null), 0, hintReceiver, mask(cards), cards==null?-1:cards.length, hint, 0);
   }
   
   /**Constructor to create Play or Discard actions
@@ -70,11 +72,34 @@ public class Action{
    * @throws IllegalActionException if the wrong ActionType is given
    * */
   public Action(int player, String playerName, ActionType type, int hintReceiver, boolean[] cards, int hint) throws IllegalActionException{
-    this(player, playerName, type);
-    if(type != ActionType.HINT_VALUE) throw new IllegalActionException("Wrong parameters for action type");
-    this.hintee = hintReceiver;
-    this.cards = cards;
-    this.value = hint;
+    this(player, playerName, check(type, ActionType.HINT_VALUE, null), 0, hintReceiver, mask(cards), cards==null?-1:cards.length, null, hint);
+  }
+
+  /**Constructor to create hint actions from a bitmask
+   * @param player the index of the player performing the action
+   * @param playerName the naem of the player performing the action
+   * @param hintReceiver the index of the player recieving the hint
+   * @param handSize the number of cards in the hint receivers hand
+   * @param mask a bitmask, such that bit i is set if and only if the ith card in the hintee's hand matches the hint
+   * @param colour the colour hinted at, or null for a value hint
+   * @param value the value hinted at, if the colour is null
+   * */
+  Action(int player, String playerName, int hintReceiver, int handSize, int mask, Colour colour, int value){
+    this(player, playerName, colour==null?ActionType.HINT_VALUE:ActionType.HINT_COLOUR, 0, hintReceiver, mask, handSize, colour, value);
+  }
+
+  //returns the type if it is one of the allowed types
+  private static ActionType check(ActionType type, ActionType a, ActionType b) throws IllegalActionException{
+    if(type==null || (type!=a && type!=b)) throw new IllegalActionException("Wrong parameters for action type");
+    return type;
+  }
+
+  //converts an array of hinted cards to a bitmask
+  private static int mask(boolean[] cards){
+    int mask = 0;
+    if(cards!=null)
+      for(int i = 0; i<cards.length; i++) if(cards[i]) mask|=1<<i;
+    return mask;
   }
 
   /**
@@ -117,9 +142,25 @@ public class Action{
    **/ 
   public boolean[] getHintedCards() throws IllegalActionException{
     if(type != ActionType.HINT_COLOUR && type!= ActionType.HINT_VALUE) throw new IllegalActionException("Action is not a hint");
-    return cards.clone();
+    if(handSize<0) return null;
+    boolean[] hinted = new boolean[handSize];
+    for(int i = 0; i<handSize; i++) hinted[i] = (cards>>i&1)==1;
+    return hinted;
+  }
+
+  /**
+   * gets a bitmask indicating the cards that are the subject of the hint, without creating an array
+   * @return an int where bit i is set if and only if the ith card in the hintReceivers hand matches the hint
+   * @throws IllegalActionException if the action type is not HINT_COLOUR or HINT_VALUE
+   **/ 
+  public int getHintMask() throws IllegalActionException{
+    if(type != ActionType.HINT_COLOUR && type!= ActionType.HINT_VALUE) throw new IllegalActionException("Action is not a hint");
+    return cards;
   }
 
+  //the number of cards in the hint receivers hand
+  int getHandSize(){return handSize;}
+
   /**
    * gets the colour hinted
    * @return the colour hinted
@@ -145,20 +186,17 @@ public class Action{
    * @return a description of the action, depending on type
    * */
   public String toString(){
-    String ret;
     switch(type){
       case PLAY: return "Player "+playerName+ "("+player+") plays the card at position "+card;
       case DISCARD: return "Player "+playerName+ "("+player+") discards the card at position "+card;
       case HINT_COLOUR: 
-       ret = "Player "+playerName+ "("+player+") gives the hint: \"Player "+hintee+", cards at position"+(cards.length>1?"s":"");
-       for(int i=0; i<cards.length; i++)ret += (cards[i]?" "+i:"");
-       ret+= " have colour "+colour+"\"";
-       return ret;
       case HINT_VALUE: 
-       ret = "Player "+playerName+ "("+player+") gives the hint: \"Player "+hintee+", cards at position"+(cards.length>1?"s":"");
-       for(int i=0; i<cards.length; i++)ret += (cards[i]?" "+i:"");
-       ret+= " have value "+value+"\"";
-       return ret;
+       StringBuilder sb = new StringBuilder("Player ").append(playerName).append("(").append(player)
+         .append(") gives the hint: \"Player ").append(hintee).append(", cards at position").append(handSize>1?"s":"");
+       for(int i=0; i<handSize; i++) if((cards>>i&1)==1) sb.append(' ').append(i);
+       if(type==ActionType.HINT_COLOUR) sb.append(" have colour ").append(colour).append('"');
+       else sb.append(" have value ").append(value).append('"');
+       return sb.toString();
     }
     return "";
   }
@@ -0,0 +1,138 @@
+package hanabAI;
+
+/**
+ * An append-only record of the actions of a game, shared by all the states of the game.
+ * Each state reads the log up to its own order, so the action made at any turn can be found in constant time.
+ * The log also keeps the first state and the card drawn at each turn, so any state can be rebuilt 
+ * when the previous states are not kept (see HistoryPolicy).
+ * If a state that is not the latest is extended with a different action (for example by an agent's simulation),
+ * the log is copied up to that turn, so the states of one line of play never see the actions of another.
+ **/
+class ActionLog{
+
+  //the order of the state before the first action in the log
+  private int start;
+  //the actions, where actions[i] was made in the state of order start+i
+  private volatile Action[] actions;
+  //the card drawn after each action, or null
+  private volatile Card[] draws;
+  //whether the deck was empty after each action
+  private volatile boolean[] empty;
+  //the number of actions recorded
+  private int size;
+  //the first state of the log
+  private State root;
+  //the interval between the states kept by putCheckpoint
+  private static final int CHECKPOINT = 16;
+  //states rebuilt from the log, every CHECKPOINT turns from the start, created on demand
+  private State[] checkpoints;
+
+  /**
+   * Creates an empty log
+   * @param root the first state of the log
+   **/
+  ActionLog(State root){
+    this.root = root;
+    this.start = root.getOrder();
+    actions = new Action[64];
+    draws = new Card[64];
+    empty = new boolean[64];
+  }
+
+  /**
+   * Records the action made in the state of the given order.
+   * @param order the order of the state the action was made in
+   * @param a the action
+   * @param drawn the card drawn after the action, or null
+   * @param deckEmpty true if the deck was empty after the action
+   * @return a log containing the actions up to and including this one: either this log, or a copy if this log already has a different action at that turn
+   **/
+  synchronized ActionLog append(int order, Action a, Card drawn, boolean deckEmpty){
+    int i = order-start;
+    if(i==size){
+      if(size==actions.length) grow(2*size);
+      actions[size] = a;
+      draws[size] = drawn;
+      empty[size++] = deckEmpty;
+      return this;
+    }
+    if(i<size && actions[i]==a && draws[i]==drawn && empty[i]==deckEmpty) return this;
+    //the copy shares only the actions before turn i
+    ActionLog log = new ActionLog(root);
+    int length = Math.max(64, 2*(i+1));
+    log.actions = new Action[length];
+    log.draws = new Card[length];
+    log.empty = new boolean[length];
+    System.arraycopy(actions, 0, log.actions, 0, i);
+    System.arraycopy(draws, 0, log.draws, 0, i);
+    System.arraycopy(empty, 0, log.empty, 0, i);
+    log.actions[i] = a;
+    log.draws[i] = drawn;
+    log.empty[i] = deckEmpty;
+    log.size = i+1;
+    return log;
+  }
+
+  //copies the arrays to a new length
+  private void grow(int length){
+    draws = java.util.Arrays.copyOf(draws, length);
+    empty = java.util.Arrays.copyOf(empty, length);
+    actions = java.util.Arrays.copyOf(actions, length);
+  }
+
+  /**
+   * Gets the action made in the state of the given order
+   * @param turn the order of the state
+   * @return the action made in that state
+   * @throws ArrayIndexOutOfBoundsException if the action is before the start of the log, or has not been made
+   **/
+  Action get(int turn) throws ArrayIndexOutOfBoundsException{
+    Action a = (turn<start?null:actions[turn-start]);
+    if(a==null) throw new ArrayIndexOutOfBoundsException("No action recorded at turn "+turn);
+    return a;
+  }
+
+  /**
+   * Gets the card drawn after the action made in the state of the given order
+   * @param turn the order of the state
+   * @return the card drawn, or null if no card was drawn
+   **/
+  Card getDraw(int turn){return draws[turn-start];}
+
+  /**
+   * Tests whether the deck was empty after the action made in the state of the given order
+   * @param turn the order of the state
+   * @return true if the deck was empty
+   **/
+  boolean isDeckEmpty(int turn){return empty[turn-start];}
+
+  /**
+   * Gives the latest state kept for rebuilding states, at or before a turn
+   * @param turn the order of the state to be rebuilt
+   * @return the latest checkpoint with an order of at most turn, or the first state of the log
+   **/
+  synchronized State getCheckpoint(int turn){
+    if(checkpoints!=null)
+      for(int i = Math.min((turn-start)/CHECKPOINT, checkpoints.length-1); i>0; i--)
+        if(checkpoints[i]!=null) return checkpoints[i];
+    return root;
+  }
+
+  /**
+   * Keeps a rebuilt state, if its order is a multiple of CHECKPOINT turns from the start of the log
+   * @param s a state rebuilt from this log
+   **/
+  synchronized void putCheckpoint(State s){
+    int i = s.getOrder()-start;
+    if(i%CHECKPOINT!=0 || i>=size) return;
+    if(checkpoints==null) checkpoints = new State[size/CHECKPOINT+1];
+    if(i/CHECKPOINT>=checkpoints.length) checkpoints = java.util.Arrays.copyOf(checkpoints, size/CHECKPOINT+1);
+    checkpoints[i/CHECKPOINT] = s;
+  }
+
+  /**@return the first state of the log**/
+  State getRoot(){return root;}
+
+  /**@return the order of the first state of the log**/
+  int getStart(){return start;}
+}
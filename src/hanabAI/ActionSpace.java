@@ -0,0 +1,205 @@
+package hanabAI;
+
+/**
+ * A numbering of every action that can be made in a game with a given number of players.
+ * Each action is identified by an int move from 0 to size()-1, so agents can store and compare
+ * moves as primitives, and only create an Action once one has been chosen.
+ * For each player the moves are numbered: plays by position, discards by position,
+ * then hints, by receiver (starting from the next player), hint (5 colours, then the values 1 to 5)
+ * and the bitmask of the cards hinted.
+ **/
+public class ActionSpace{
+
+  private static final ActionSpace[] SPACES = new ActionSpace[6];
+  static{
+    for(int n = 2; n<=5; n++) SPACES[n] = new ActionSpace(n);
+  }
+
+  private int players;
+  private int handSize;
+  //the number of moves for each player
+  private int perPlayer;
+
+  private ActionSpace(int players){
+    this.players = players;
+    this.handSize = players>3?4:5;
+    this.perPlayer = 2*handSize+(players-1)*10*(1<<handSize);
+  }
+
+  /**
+   * Gives the action space for a game
+   * @param players the number of players in the game
+   * @return the action space for that number of players
+   * @throws IllegalArgumentException if players is not between 2 and 5
+   **/
+  public static ActionSpace get(int players) throws IllegalArgumentException{
+    if(players<2 || players>5) throw new IllegalArgumentException("incorrect number of players");
+    return SPACES[players];
+  }
+
+  /**@return the number of players in the game**/
+  public int getPlayers(){return players;}
+
+  /**@return the number of cards in each hand**/
+  public int getHandSize(){return handSize;}
+
+  /**@return the number of moves, so moves are numbered from 0 to size()-1**/
+  public int size(){return players*perPlayer;}
+
+  /**@return the largest number of moves that can be legal in one state**/
+  public int maxLegalMoves(){return 2*handSize+(players-1)*10;}
+
+  /**
+   * @param player the player making the move
+   * @param position the position of the card played
+   * @return the move for playing the card
+   **/
+  public int play(int player, int position){return player*perPlayer+position;}
+
+  /**
+   * @param player the player making the move
+   * @param position the position of the card discarded
+   * @return the move for discarding the card
+   **/
+  public int discard(int player, int position){return player*perPlayer+handSize+position;}
+
+  /**
+   * @param player the player giving the hint
+   * @param receiver the player receiving the hint
+   * @param colour the colour hinted
+   * @param mask the bitmask of the cards hinted, where bit i is set if position i is hinted
+   * @return the move for the hint
+   * @throws IllegalActionException if the receiver is the player, or is not a player in the game
+   **/
+  public int colourHint(int player, int receiver, Colour colour, int mask) throws IllegalActionException{
+    return hint(player, receiver, colour.ordinal(), mask);
+  }
+
+  /**
+   * @param player the player giving the hint
+   * @param receiver the player receiving the hint
+   * @param value the value hinted, from 1 to 5
+   * @param mask the bitmask of the cards hinted, where bit i is set if position i is hinted
+   * @return the move for the hint
+   * @throws IllegalActionException if the receiver is the player, or is not a player in the game
+   **/
+  public int valueHint(int player, int receiver, int value, int mask) throws IllegalActionException{
+    return hint(player, receiver, 4+value, mask);
+  }
+
+  //kind is the colour ordinal for colour hints, and 4+value for value hints
+  private int hint(int player, int receiver, int kind, int mask) throws IllegalActionException{
+    if(receiver<0 || receiver>=players) throw new IllegalActionException("Hint receiver out of bounds");
+    if(receiver==player) throw new IllegalActionException("Players cannot hint themselves");
+    int r = (receiver-player-1+players)%players;
+    return player*perPlayer+2*handSize+(((r*10)+kind)<<handSize)+mask;
+  }
+
+  /**
+   * Gives the move of an action
+   * @param a the action
+   * @return the number of the action
+   * @throws IllegalActionException if the action does not belong to a game with this number of players,
+   * that is, a player, card position, hint receiver or hinted card is out of bounds, or a player hints themselves,
+   * or a hinted colour or value is missing
+   **/
+  public int getMove(Action a) throws IllegalActionException{
+    int p = a.getPlayer();
+    if(p<0 || p>=players) throw new IllegalActionException("Player out of bounds");
+    switch(a.getType()){
+      case PLAY: return play(p, position(a.getCard()));
+      case DISCARD: return discard(p, position(a.getCard()));
+      case HINT_COLOUR: 
+        if(a.getColour()==null) throw new IllegalActionException("Hint colour missing");
+        return colourHint(p, a.getHintReceiver(), a.getColour(), mask(a.getHintMask()));
+      default: 
+        if(a.getValue()<1 || a.getValue()>5) throw new IllegalActionException("Hint value out of bounds");
+        return valueHint(p, a.getHintReceiver(), a.getValue(), mask(a.getHintMask()));
+    }
+  }
+
+  //checks a card position is in the hand
+  private int position(int position) throws IllegalActionException{
+    if(position<0 || position>=handSize) throw new IllegalActionException("Card position out of bounds");
+    return position;
+  }
+
+  //checks a hint mask only has bits for cards in the hand
+  private int mask(int mask) throws IllegalActionException{
+    if(mask<=0 || mask>=1<<handSize) throw new IllegalActionException("Hinted cards out of bounds");
+    return mask;
+  }
+
+  /**
+   * @param move a move in this space
+   * @return the player making the move
+   **/
+  public int getPlayer(int move){return move/perPlayer;}
+
+  /**
+   * @param move a move in this space
+   * @return the type of the move
+   **/
+  public ActionType getType(int move){
+    int m = move%perPlayer;
+    if(m<handSize) return ActionType.PLAY;
+    if(m<2*handSize) return ActionType.DISCARD;
+    return ((m-2*handSize)>>handSize)%10<5?ActionType.HINT_COLOUR:ActionType.HINT_VALUE;
+  }
+
+  /**
+   * @param move a play or discard move
+   * @return the position of the card played or discarded
+   **/
+  public int getPosition(int move){return move%perPlayer%handSize;}
+
+  /**
+   * @param move a hint move
+   * @return the player receiving the hint
+   **/
+  public int getReceiver(int move){
+    int r = ((move%perPlayer-2*handSize)>>handSize)/10;
+    return (getPlayer(move)+r+1)%players;
+  }
+
+  /**
+   * @param move a colour hint move
+   * @return the colour hinted
+   **/
+  public Colour getColour(int move){return Colour.values()[((move%perPlayer-2*handSize)>>handSize)%10];}
+
+  /**
+   * @param move a value hint move
+   * @return the value hinted
+   **/
+  public int getValue(int move){return ((move%perPlayer-2*handSize)>>handSize)%10-4;}
+
+  /**
+   * @param move a hint move
+   * @return the bitmask of the cards hinted, where bit i is set if position i is hinted
+   **/
+  public int getMask(int move){return (move%perPlayer-2*handSize)&((1<<handSize)-1);}
+
+  /**
+   * Creates the Action for a move.
+   * ActionTable keeps a shared instance of each action, which should be used in preference.
+   * @param move a move in this space
+   * @param playerName the name of the player making the move
+   * @return a new Action
+   **/
+  public Action toAction(int move, String playerName){
+    int p = getPlayer(move);
+    try{
+      switch(getType(move)){
+        case PLAY: return new Action(p, playerName, ActionType.PLAY, getPosition(move));
+        case DISCARD: return new Action(p, playerName, ActionType.DISCARD, getPosition(move));
+        case HINT_COLOUR: return new Action(p, playerName, getReceiver(move), handSize, getMask(move), getColour(move), 0);
+        default: return new Action(p, playerName, getReceiver(move), handSize, getMask(move), null, getValue(move));
+      }
+    }
+    catch(IllegalActionException e){//cannot occur, as the types match
+      e.printStackTrace();
+      throw new RuntimeException("Something has gone very wrong");
+    }
+  }
+}
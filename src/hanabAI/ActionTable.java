@@ -0,0 +1,93 @@
+package hanabAI;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of shared, immutable Action objects, one for each move of the ActionSpace of a game.
+ * Agents and the engine can pass moves around as ints, and get the Action for a move without creating one.
+ * Tables are shared by all games with the same player names.
+ * The tables of the most recently used sets of names are kept, so long runs with changing names do not rebuild them for every game.
+ * Looking up a table that is kept does not take a lock, so games and samplers on many threads do not contend for it.
+ **/
+public class ActionTable{
+
+  //the number of distinct sets of names kept, so that tables are not kept for every game played
+  private static final int CACHE_LIMIT = 256;
+  //the tables, read without locking
+  private static final Map<List<String>,ActionTable> TABLES = new ConcurrentHashMap<List<String>,ActionTable>();
+  //counts the tables added, to order the tables by last use; guarded by TABLES
+  private static volatile long clock;
+
+  //the value of clock when the table was last used
+  private volatile long used;
+  private ActionSpace space;
+  private Action[] actions;
+
+  //builds every action of the game
+  private ActionTable(String[] players){
+    space = ActionSpace.get(players.length);
+    actions = new Action[space.size()];
+    for(int m = 0; m<actions.length; m++) actions[m] = space.toAction(m, players[space.getPlayer(m)]);
+  }
+
+  /**
+   * Gives the table for a game
+   * @param players the names of the players in the game, by index
+   * @return the ActionTable for those players
+   * @throws IllegalArgumentException if there are not between 2 and 5 players
+   **/
+  public static ActionTable get(String[] players) throws IllegalArgumentException{
+    List<String> key = Arrays.asList(players.clone());
+    ActionTable table = TABLES.get(key);
+    if(table!=null){
+      //only written once per table added, so repeated lookups of the same tables do not contend
+      if(table.used!=clock) table.used = clock;
+      return table;
+    }
+    //the table is built outside the lock, and the first one stored is kept
+    table = new ActionTable(players);
+    synchronized(TABLES){
+      ActionTable t = TABLES.get(key);
+      if(t!=null) return t;
+      if(TABLES.size()>=CACHE_LIMIT) evict();
+      table.used = ++clock;
+      TABLES.put(key, table);
+    }
+    return table;
+  }
+
+  //removes the least recently used table; called holding the lock on TABLES
+  private static void evict(){
+    List<String> eldest = null;
+    long oldest = Long.MAX_VALUE;
+    for(Map.Entry<List<String>,ActionTable> e: TABLES.entrySet()){
+      if(e.getValue().used<oldest){
+        oldest = e.getValue().used;
+        eldest = e.getKey();
+      }
+    }
+    if(eldest!=null) TABLES.remove(eldest);
+  }
+
+  /**@return the numbering of the actions in the table**/
+  public ActionSpace getActionSpace(){return space;}
+
+  /**
+   * Gets the shared Action for a move
+   * @param move a move of the ActionSpace
+   * @return the action
+   * @throws ArrayIndexOutOfBoundsException if the move is out of range
+   **/
+  public Action get(int move) throws ArrayIndexOutOfBoundsException{return actions[move];}
+
+  /**
+   * Gives the move of an action
+   * @param a the action
+   * @return the number of the action in the ActionSpace
+   * @throws IllegalActionException if the action does not belong to a game with this number of players
+   **/
+  public int getMove(Action a) throws IllegalActionException{return space.getMove(a);}
+}
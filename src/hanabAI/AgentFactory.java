@@ -0,0 +1,17 @@
+package hanabAI;
+
+/**
+ * An interface for creating fresh agents.
+ * Agents keep state between moves, so each game needs its own instances, 
+ * and a factory allows a tournament to create them as games are run.
+ * Implementations must be safe to call from several threads at once.
+ * */
+public interface AgentFactory{
+
+  /**
+   * Creates a new agent, ready to play its first game
+   * @return a new agent instance
+   * */
+  public Agent newAgent();
+
+}
@@ -2,21 +2,74 @@ package hanabAI;
 
 import java.util.Stack;
 
-/**An immutable class for representing Hanabi cards**/
+/**
+ * An immutable class for representing Hanabi cards.
+ * There are 25 distinct cards (colour and value), each with an index from 0 to 24, 
+ * so that agents can count cards in primitive arrays.
+ * Card.get returns a shared instance for each index, and the deck is made of these instances.
+ **/
 public class Card{
+  /**The number of distinct cards**/
+  public static final int IDENTITIES = 25;
+
   private Colour colour;//the card's colour
   private int value;//the number on the card
+  private int index;//5 times the colour ordinal, plus the value minus 1
 
   /**
    * Constrcuts a card with the specified colour and value
-   * @throws IllegalArgumentException if the Value is not between 1 and 5 inclusive
+   * @throws IllegalArgumentException if the Colour is null, or the Value is not between 1 and 5 inclusive
    **/
   public Card(Colour c, int val) throws IllegalArgumentException{
+    if(c==null) throw new IllegalArgumentException("Card colour missing");
     if(val<1 || val>5) throw new IllegalArgumentException("Card value out of range");
     colour = c;
     value = val;
+    index = index(c,val);
+  }
+
+  /**
+   * Gives the shared instance of the card with the specified colour and value
+   * @return the card with the given colour and value
+   * @throws IllegalArgumentException if the Colour is null, or the Value is not between 1 and 5 inclusive
+   **/
+  public static Card get(Colour c, int val) throws IllegalArgumentException{
+    if(c==null) throw new IllegalArgumentException("Card colour missing");
+    if(val<1 || val>5) throw new IllegalArgumentException("Card value out of range");
+    return cards[index(c,val)];
   }
 
+  /**
+   * Gives the shared instance of the card with the specified index
+   * @param index the index of the card, from 0 to 24
+   * @return the card with the given index
+   * @throws ArrayIndexOutOfBoundsException if the index is not between 0 and 24
+   **/
+  public static Card get(int index) throws ArrayIndexOutOfBoundsException{return cards[index];}
+
+  /**
+   * Gives the index of the card with the specified colour and value
+   * @return 5 times the colour ordinal, plus the value minus 1
+   * @throws IllegalArgumentException if the Colour is null
+   **/
+  public static int index(Colour c, int val) throws IllegalArgumentException{
+    if(c==null) throw new IllegalArgumentException("Card colour missing");
+    return 5*c.ordinal()+val-1;
+  }
+
+  /**
+   * Gives the number of copies of a card in the deck
+   * @param index the index of the card
+   * @return 3 for ones, 1 for fives, and 2 otherwise
+   **/
+  public static int count(int index){return COUNTS[index];}
+
+  /**
+   *Get the index of the card
+   *@return the index of the card, from 0 to 24, which is the same for equal cards
+   */
+  public int getIndex(){return index;}
+
   /**
    *Get the colour
    *@return the colour of the card
@@ -49,18 +102,27 @@ public class Card{
 
   /**
    * Gives a new instance of a shuffled deck of cards deck of cards.
-   * Pairs of random cards are swapped 100 times, and placed into a stack. 
+   * The deck is shuffled with a single Fisher-Yates pass, and placed into a stack.
+   * The Deck class gives the same shuffle without creating a Stack. 
    * @return a stack of Hanabi cards in random order 
    **/
   public static Stack<Card> shuffledDeck(){
+    return new Deck(new java.util.SplittableRandom()).toStack();
+  }
+
+  /**
+   * Gives a new instance of a shuffled deck of cards, using the given source of randomness.
+   * Supplying a seeded Random allows a deal to be reproduced.
+   * @param r the random number generator used to shuffle the deck
+   * @return a stack of Hanabi cards in random order 
+   **/
+  public static Stack<Card> shuffledDeck(java.util.Random r){
     Card[] deck = getDeck();
-    java.util.Random r = new java.util.Random();
-    for(int i = 0; i<1000; i++){
-      int a = r.nextInt(50);
-      int b = r.nextInt(50);
-      Card c = deck[a];
-      deck[a]= deck[b];
-      deck[b]=c;
+    for(int i = deck.length-1; i>0; i--){
+      int j = r.nextInt(i+1);
+      Card c = deck[i];
+      deck[i]= deck[j];
+      deck[j]=c;
     }
     Stack<Card> shuffle = new Stack<Card>();
     for(Card c: deck) shuffle.push(c);
@@ -71,36 +133,38 @@ public class Card{
    * Cards are compared by colour and value.
    **/ 
   public boolean equals(Object o){
+    if(o==this) return true;
     if(o!=null && o instanceof Card){ 
       Card c = (Card)o;
-      return c.colour == colour && c.value==value;
+      return c.index==index;
     }
     return false;
   }
 
   public int hashCode(){
-    return 5*colour.ordinal()+value;
+    return index+1;
   }
 
 
-  private static Card[] deck = {
-    new Card(Colour.BLUE,1),new Card(Colour.BLUE,1), new Card(Colour.BLUE,1),
-    new Card(Colour.BLUE,2),new Card(Colour.BLUE,2),new Card(Colour.BLUE,3),new Card(Colour.BLUE,3),
-    new Card(Colour.BLUE,4),new Card(Colour.BLUE,4),new Card(Colour.BLUE,5),
-    new Card(Colour.RED,1),new Card(Colour.RED,1), new Card(Colour.RED,1),
-    new Card(Colour.RED,2),new Card(Colour.RED,2),new Card(Colour.RED,3),new Card(Colour.RED,3),
-    new Card(Colour.RED,4),new Card(Colour.RED,4),new Card(Colour.RED,5),
-    new Card(Colour.GREEN,1),new Card(Colour.GREEN,1), new Card(Colour.GREEN,1),
-    new Card(Colour.GREEN,2),new Card(Colour.GREEN,2),new Card(Colour.GREEN,3),new Card(Colour.GREEN,3),
-    new Card(Colour.GREEN,4),new Card(Colour.GREEN,4),new Card(Colour.GREEN,5),
-    new Card(Colour.WHITE,1),new Card(Colour.WHITE,1), new Card(Colour.WHITE,1),
-    new Card(Colour.WHITE,2),new Card(Colour.WHITE,2),new Card(Colour.WHITE,3),new Card(Colour.WHITE,3),
-    new Card(Colour.WHITE,4),new Card(Colour.WHITE,4),new Card(Colour.WHITE,5),
-    new Card(Colour.YELLOW,1),new Card(Colour.YELLOW,1), new Card(Colour.YELLOW,1),
-    new Card(Colour.YELLOW,2),new Card(Colour.YELLOW,2),new Card(Colour.YELLOW,3),new Card(Colour.YELLOW,3),
-    new Card(Colour.YELLOW,4),new Card(Colour.YELLOW,4),new Card(Colour.YELLOW,5)
-  };
-
-}
+  //one card of each index
+  private static Card[] cards = new Card[IDENTITIES];
+  //the number of copies of each card in the deck
+  private static final int[] COUNTS = new int[IDENTITIES];
+  static{
+    for(Colour c: Colour.values())
+      for(int v = 1; v<=5; v++){
+        Card card = new Card(c,v);
+        cards[card.index] = card;
+        COUNTS[card.index] = card.getCount();
+      }
+  }
 
+  //a complete deck, ordered by colour and value
+  private static Card[] deck = new Card[50];
+  static{
+    int i = 0;
+    for(Card c: cards)
+      for(int k = 0; k<c.getCount(); k++) deck[i++] = c;
+  }
 
+}
@@ -0,0 +1,190 @@
+package hanabAI;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A paired comparison of two agent builds, a candidate and a baseline, with early stopping.
+ * Both builds play every seeded deal with common random numbers: the same deck, and
+ * (for SeededAgentFactory factories) the same seed for the agent in each seat,
+ * so most of the variation between deals cancels in the difference of their scores.
+ * Games are played in parallel batches on a ForkJoinPool, and the differences are then read in seed order,
+ * so the result depends only on the seeds, not on the scheduling of the threads.
+ * After each difference, a mixture sequential probability ratio test (a normal mixture over the mean difference,
+ * with the sample variance plugged in) is checked against the hypothesis of no difference,
+ * and the comparison stops as soon as the likelihood ratio reaches 1/alpha, or the game limit is reached.
+ * Abandoned games count as a score of 0.
+ **/
+public class Comparison{
+
+  /**The number of games a task plays without splitting further**/
+  private static final int GRAIN = 16;
+
+  private AgentFactory candidate;
+  private AgentFactory baseline;
+  private ForkJoinPool pool;
+  private int batch;
+  private double alpha = 0.05;
+  private double tau = 1.0;
+  private int minPairs = 30;
+
+  /**
+   * Creates a comparison that uses all available processors
+   * @param candidate the factory for the agents of the build being tested
+   * @param baseline the factory for the agents of the build it is compared to
+   **/
+  public Comparison(AgentFactory candidate, AgentFactory baseline){
+    this(candidate, baseline, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a comparison with a given number of threads
+   * @param candidate the factory for the agents of the build being tested
+   * @param baseline the factory for the agents of the build it is compared to
+   * @param threads the number of worker threads
+   * @throws IllegalArgumentException if a factory is null or threads is not positive
+   **/
+  public Comparison(AgentFactory candidate, AgentFactory baseline, int threads) throws IllegalArgumentException{
+    if(candidate==null || baseline==null || threads<1) throw new IllegalArgumentException("incorrect parameters");
+    this.candidate = candidate;
+    this.baseline = baseline;
+    this.pool = new ForkJoinPool(threads);
+    this.batch = 4*GRAIN*threads;
+  }
+
+  /**
+   * Sets the parameters of the sequential test
+   * @param alpha the chance of declaring a difference when there is none, between 0 and 1 (default 0.05)
+   * @param tau the standard deviation, in points, of the normal mixture over the mean difference: 
+   * about the size of difference expected (default 1)
+   * @param minPairs the number of pairs played before the test is first checked, so the variance is estimated (default 30)
+   * @throws IllegalArgumentException if a parameter is out of range
+   **/
+  public void setTest(double alpha, double tau, int minPairs) throws IllegalArgumentException{
+    if(!(alpha>0 && alpha<1) || !(tau>0) || minPairs<2) throw new IllegalArgumentException("incorrect test parameters");
+    this.alpha = alpha;
+    this.tau = tau;
+    this.minPairs = minPairs;
+  }
+
+  /**
+   * Plays pairs of games on consecutive seeds until the test is significant, or the limit is reached.
+   * @param numPlayers the number of players in each game, from 2 to 5
+   * @param firstSeed the seed of the first deal
+   * @param maxPairs the largest number of deals to play
+   * @return the result of the comparison
+   * @throws IllegalArgumentException if the number of players is not between 2 and 5
+   **/
+  public ComparisonResult run(int numPlayers, long firstSeed, int maxPairs) throws IllegalArgumentException{
+    if(numPlayers<2 || numPlayers>5 || maxPairs<0) throw new IllegalArgumentException("incorrect parameters");
+    ScoreStats candidateStats = new ScoreStats(), baselineStats = new ScoreStats();
+    int[] candidateScores = new int[batch], baselineScores = new int[batch];
+    boolean[] candidateBusts = new boolean[batch], baselineBusts = new boolean[batch];
+    double threshold = Math.log(1/alpha), mean = 0, m2 = 0, llr = 0;
+    long n = 0;
+    while(n<maxPairs){
+      int size = (int)Math.min(batch, maxPairs-n);
+      pool.invoke(new Pairs(numPlayers, firstSeed+n, 0, size, candidateScores, baselineScores, candidateBusts, baselineBusts));
+      for(int i = 0; i<size; i++){
+        candidateStats.add(candidateScores[i], candidateBusts[i]);
+        baselineStats.add(baselineScores[i], baselineBusts[i]);
+        double d = Math.max(0, candidateScores[i])-Math.max(0, baselineScores[i]);
+        n++;
+        double delta = d-mean;
+        mean+=delta/n;
+        m2+=delta*(d-mean);
+        if(n<minPairs) continue;
+        llr = logLikelihoodRatio(n, mean, m2/(n-1));
+        if(llr>=threshold) return new ComparisonResult(n, mean, m2/(n-1), llr, true, candidateStats, baselineStats);
+      }
+    }
+    return new ComparisonResult(n, mean, n>1?m2/(n-1):0, llr, false, candidateStats, baselineStats);
+  }
+
+  //the log of the normal mixture likelihood ratio for n differences with the given mean and variance
+  private double logLikelihoodRatio(long n, double mean, double variance){
+    if(variance==0) return mean==0?0:Double.POSITIVE_INFINITY;
+    double t2 = tau*tau;
+    double s = variance+n*t2;
+    return 0.5*Math.log(variance/s)+n*n*t2*mean*mean/(2*variance*s);
+  }
+
+  /**
+   * Stops the worker threads, once all running games have finished.
+   **/
+  public void shutdown(){pool.shutdown();}
+
+  /**
+   * Plays a single seeded game, seeding the agent in each seat from the deal seed when the factory allows it.
+   * @param factory the factory used to create the agents
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal, and the seeds of the agents
+   * @param busts an array in which the fuse of the final state being 0 is recorded
+   * @param index the index in busts to record at
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public static int playGame(AgentFactory factory, int numPlayers, long seed, boolean[] busts, int index){
+    return Tournament.playGame(factory, numPlayers, seed, HistoryPolicy.FULL, null, null, null, busts, index);
+  }
+
+  /**A task playing both builds on a contiguous range of seeds, splitting in half until the range is small**/
+  private class Pairs extends RecursiveAction{
+    private static final long serialVersionUID = 1L;
+    private int numPlayers;
+    private long firstSeed;
+    private int offset;
+    private int count;
+    private int[] candidateScores;
+    private int[] baselineScores;
+    private boolean[] candidateBusts;
+    private boolean[] baselineBusts;
+
+    Pairs(int numPlayers, long firstSeed, int offset, int count, int[] candidateScores, int[] baselineScores, 
+        boolean[] candidateBusts, boolean[] baselineBusts){
+      this.numPlayers = numPlayers;
+      this.firstSeed = firstSeed;
+      this.offset = offset;
+      this.count = count;
+      this.candidateScores = candidateScores;
+      this.baselineScores = baselineScores;
+      this.candidateBusts = candidateBusts;
+      this.baselineBusts = baselineBusts;
+    }
+
+    protected void compute(){
+      if(count<=GRAIN){
+        for(int i = offset; i<offset+count; i++){
+          long seed = firstSeed+i;
+          candidateScores[i] = playGame(candidate, numPlayers, seed, candidateBusts, i);
+          baselineScores[i] = playGame(baseline, numPlayers, seed, baselineBusts, i);
+        }
+        return;
+      }
+      int half = count/2;
+      invokeAll(new Pairs(numPlayers, firstSeed, offset, half, candidateScores, baselineScores, candidateBusts, baselineBusts),
+          new Pairs(numPlayers, firstSeed, offset+half, count-half, candidateScores, baselineScores, candidateBusts, baselineBusts));
+    }
+  }
+
+  /**
+   * Compares a single threaded MCTSAgent with a small iteration budget against the basic agent.
+   * The optional arguments are the number of players (default 3) and the largest number of deals (default 2000).
+   * */
+  public static void main(String[] args){
+    int players = args.length>0?Integer.parseInt(args[0]):3;
+    int pairs = args.length>1?Integer.parseInt(args[1]):2000;
+    Comparison c = new Comparison(new SeededAgentFactory(){
+      public Agent newAgent(){return new agents.MCTSAgent(1, 10000, 1000);}
+      public Agent newAgent(long seed){return new agents.MCTSAgent(1, 10000, 1000, seed);}
+    }, new SeededAgentFactory(){
+      public Agent newAgent(){return new agents.BasicAgent();}
+      public Agent newAgent(long seed){return new agents.BasicAgent(seed);}
+    });
+    long start = System.nanoTime();
+    ComparisonResult result = c.run(players, 0, pairs);
+    long time = System.nanoTime()-start;
+    c.shutdown();
+    System.out.print(result);
+    System.out.printf("%d pairs in %.2fs%n", result.getPairs(), time/1e9);
+  }
+}
@@ -0,0 +1,64 @@
+package hanabAI;
+
+/**
+ * The outcome of a Comparison: the paired score differences, candidate minus baseline,
+ * the statistics of each side, and the state of the sequential test when the comparison stopped.
+ **/
+public class ComparisonResult{
+
+  private long pairs;
+  private double mean;
+  private double variance;
+  private double logLikelihoodRatio;
+  private boolean significant;
+  private ScoreStats candidate;
+  private ScoreStats baseline;
+
+  ComparisonResult(long pairs, double mean, double variance, double logLikelihoodRatio, boolean significant,
+      ScoreStats candidate, ScoreStats baseline){
+    this.pairs = pairs;
+    this.mean = mean;
+    this.variance = variance;
+    this.logLikelihoodRatio = logLikelihoodRatio;
+    this.significant = significant;
+    this.candidate = candidate;
+    this.baseline = baseline;
+  }
+
+  /**@return the number of deals played by both sides**/
+  public long getPairs(){return pairs;}
+
+  /**@return the mean of the paired score differences, candidate minus baseline**/
+  public double getMeanDifference(){return mean;}
+
+  /**@return the sample standard deviation of the paired score differences**/
+  public double getStdDev(){return Math.sqrt(variance);}
+
+  /**@return the standard error of the mean difference**/
+  public double getStdError(){return pairs==0?0:Math.sqrt(variance/pairs);}
+
+  /**@return the log of the mixture likelihood ratio against no difference, when the comparison stopped**/
+  public double getLogLikelihoodRatio(){return logLikelihoodRatio;}
+
+  /**@return true if the test rejected the hypothesis of no difference before the game limit**/
+  public boolean isSignificant(){return significant;}
+
+  /**@return 1 if the candidate is significantly better, -1 if it is significantly worse, and 0 if there is no decision**/
+  public int getDecision(){return significant?(mean>0?1:-1):0;}
+
+  /**@return the scores of the candidate**/
+  public ScoreStats getCandidate(){return candidate;}
+
+  /**@return the scores of the baseline**/
+  public ScoreStats getBaseline(){return baseline;}
+
+  /**
+   * Summarises the comparison
+   * @return the number of pairs, the mean difference and its standard error, each side's mean, and the decision
+   **/
+  public String toString(){
+    String decision = getDecision()==1?"candidate better":(getDecision()==-1?"candidate worse":"no decision");
+    return String.format("pairs=%d diff=%+.3f se=%.3f candidate=%.3f baseline=%.3f logLR=%.2f %s%n",
+        pairs, mean, getStdError(), candidate.getMean(), baseline.getMean(), logLikelihoodRatio, decision);
+  }
+}
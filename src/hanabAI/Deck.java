@@ -0,0 +1,181 @@
+package hanabAI;
+
+import java.util.SplittableRandom;
+import java.util.Stack;
+
+/**
+ * A class for representing the deck of cards in a game of Hanabi.
+ * Cards are stored by index (from 0 to 24, see Card.getIndex) in a byte array, 
+ * and drawn from the top of the deck, which is the end of the array.
+ * A deck is shuffled with a single Fisher-Yates pass, from an explicit seed or random stream, 
+ * so the same deal can be replayed for different agents.
+ **/
+public class Deck{
+
+  /**The number of cards in a full deck**/
+  public static final int SIZE = 50;
+
+  //the indexes of the cards in a full deck, ordered by colour and value
+  private static final byte[] ORDERED = new byte[SIZE];
+  static{
+    Card[] deck = Card.getDeck();
+    for(int i = 0; i<SIZE; i++) ORDERED[i] = (byte)deck[i].getIndex();
+  }
+
+  //the card indexes, with the top of the deck at index size-1
+  private byte[] cards;
+  //the number of cards left in the deck
+  private int size;
+
+  /**
+   * Creates a shuffled deck from a seed
+   * @param seed the seed that determines the order of the deck
+   **/
+  public Deck(long seed){
+    this(new SplittableRandom(seed));
+  }
+
+  /**
+   * Creates a shuffled deck, using the next values from a random stream
+   * @param r the random number generator used to shuffle the deck
+   **/
+  public Deck(SplittableRandom r){
+    cards = ORDERED.clone();
+    size = SIZE;
+    shuffle(cards, 0, r);
+  }
+
+  /**
+   * Creates a deck from a deal in a block created by deals.
+   * The block is not modified, so the same deal can be used again.
+   * @param block a buffer of deals, each of 50 card indexes
+   * @param index the index of the deal in the block
+   * @throws ArrayIndexOutOfBoundsException if there is no deal with the given index
+   **/
+  public Deck(byte[] block, int index) throws ArrayIndexOutOfBoundsException{
+    if(index<0 || (index+1)*SIZE>block.length) throw new ArrayIndexOutOfBoundsException("No deal "+index);
+    cards = new byte[SIZE];
+    System.arraycopy(block, index*SIZE, cards, 0, SIZE);
+    size = SIZE;
+  }
+
+  /**
+   * Creates a deck with the same order as a stack of cards, so that the top of the stack is drawn first.
+   * @param stack the cards in the deck
+   **/
+  public Deck(Stack<Card> stack){
+    size = stack.size();
+    cards = new byte[size];
+    for(int i = 0; i<size; i++) cards[i] = (byte)stack.get(i).getIndex();
+  }
+
+  /**
+   * Creates a deck from the cards of a stack, removing them from the stack, so the cards are held in one place only.
+   * @param stack the cards in the deck, with the top of the stack drawn first, which is left empty
+   * @return a deck holding the cards of the stack
+   **/
+  public static Deck drain(Stack<Card> stack){
+    Deck d = new Deck(stack);
+    stack.clear();
+    return d;
+  }
+
+  /**
+   * Shuffles a deal of 50 card indexes in place, with a single Fisher-Yates pass
+   * @param buffer the array containing the deal
+   * @param offset the position of the first card of the deal
+   * @param r the random number generator used to shuffle
+   **/
+  public static void shuffle(byte[] buffer, int offset, SplittableRandom r){
+    for(int i = SIZE-1; i>0; i--){
+      int j = offset+r.nextInt(i+1);
+      byte b = buffer[offset+i];
+      buffer[offset+i] = buffer[j];
+      buffer[j] = b;
+    }
+  }
+
+  /**
+   * Generates a block of shuffled deals in a single contiguous buffer.
+   * Deal i occupies indexes 50*i to 50*i+49, and can be read with new Deck(block, i).
+   * @param r the random number generator used to shuffle
+   * @param count the number of deals
+   * @return a buffer containing count deals
+   **/
+  public static byte[] deals(SplittableRandom r, int count){
+    byte[] block = new byte[count*SIZE];
+    for(int i = 0; i<count; i++){
+      System.arraycopy(ORDERED, 0, block, i*SIZE, SIZE);
+      shuffle(block, i*SIZE, r);
+    }
+    return block;
+  }
+
+  /**
+   * Generates a block of deals, where deal i is the deal of new Deck(firstSeed+i).
+   * @param firstSeed the seed of the first deal
+   * @param count the number of deals
+   * @return a buffer containing count deals
+   **/
+  public static byte[] deals(long firstSeed, int count){
+    byte[] block = new byte[count*SIZE];
+    for(int i = 0; i<count; i++){
+      System.arraycopy(ORDERED, 0, block, i*SIZE, SIZE);
+      shuffle(block, i*SIZE, new SplittableRandom(firstSeed+i));
+    }
+    return block;
+  }
+
+  /**
+   * Tests if the deck is empty
+   * @return true if there are no cards left
+   **/
+  public boolean isEmpty(){return size==0;}
+
+  /**
+   * Gets the number of cards in the deck
+   * @return the number of cards left to draw
+   **/
+  public int size(){return size;}
+
+  /**
+   * Draws the top card of the deck
+   * @return the card drawn
+   * @throws java.util.EmptyStackException if the deck is empty
+   **/
+  public Card pop(){
+    if(size==0) throw new java.util.EmptyStackException();
+    return Card.get(cards[--size]);
+  }
+
+  /**
+   * Gets the top card of the deck without drawing it
+   * @return the card on top of the deck
+   * @throws java.util.EmptyStackException if the deck is empty
+   **/
+  public Card peek(){
+    if(size==0) throw new java.util.EmptyStackException();
+    return Card.get(cards[size-1]);
+  }
+
+  /**
+   * Gives the index of the card at a given depth in the deck
+   * @param depth the number of cards above it, so 0 is the top card
+   * @return the index of the card, from 0 to 24
+   * @throws ArrayIndexOutOfBoundsException if the deck has no card at that depth
+   **/
+  public int getCardIndex(int depth) throws ArrayIndexOutOfBoundsException{
+    if(depth<0 || depth>=size) throw new ArrayIndexOutOfBoundsException();
+    return cards[size-1-depth];
+  }
+
+  /**
+   * Gives the remaining cards as a stack, for code that uses Card.shuffledDeck
+   * @return a stack, with the top of the deck at the top of the stack
+   **/
+  public Stack<Card> toStack(){
+    Stack<Card> stack = new Stack<Card>();
+    for(int i = 0; i<size; i++) stack.push(Card.get(cards[i]));
+    return stack;
+  }
+}
@@ -0,0 +1,161 @@
+package hanabAI;
+
+import java.util.SplittableRandom;
+
+/**
+ * A sampler of determinizations: complete positions consistent with what the observer of a local state knows.
+ * A determinization fills in the observer's hidden cards and the order of the deck from the cards the observer has not seen,
+ * respecting the identities still possible for each hidden card (see HandKnowledge).
+ * The information set is prepared once with prepare, after which each sample copies a PackedState
+ * and draws from primitive counts into reusable buffers, so sampling does not allocate.
+ * The samples are exactly uniform over the consistent deals, and none is rejected.
+ * As there are at most 5 hidden cards, prepare counts the ways of dealing each subset of them from the identities up to each identity,
+ * and each sample then walks back through the identities, choosing the hidden cards given each identity 
+ * in proportion to the number of consistent deals of the rest.
+ * A Determinizer is not thread safe, so each searching thread should use its own.
+ **/
+public class Determinizer{
+
+  private SplittableRandom random;
+  private String[] names;
+  private ActionTable actions;
+  //the local state with UNKNOWN cards in the observer's hand and deck
+  private PackedState base;
+  private int observer;
+  //the unseen copies of each identity
+  private int[] unseen = new int[Card.IDENTITIES];
+  //the positions of the hidden cards, and the identities possible for each
+  private int[] positions = new int[5];
+  private int[] masks = new int[5];
+  private int hidden;
+  //for each identity, the set of hidden cards it is possible for
+  private int[] allowed = new int[Card.IDENTITIES];
+  //ways[i][S] is the number of ways of dealing the set S of hidden cards from the unseen copies of identities below i
+  private long[][] ways = new long[Card.IDENTITIES+1][32];
+  //buffers for a sample
+  private int[] left = new int[Card.IDENTITIES];
+  private byte[] deck = new byte[Deck.SIZE];
+  private PackedState sample;
+
+  /**
+   * Creates a sampler with a seeded random number generator, so the samples can be repeated
+   * @param seed the seed
+   **/
+  public Determinizer(long seed){
+    this(new SplittableRandom(seed));
+  }
+
+  /**
+   * Creates a sampler
+   * @param random the source of randomness
+   **/
+  public Determinizer(SplittableRandom random){
+    this.random = random;
+  }
+
+  /**
+   * Prepares to sample the information set of a state.
+   * @param local the state, usually a local state. If it is global only the order of the deck is sampled.
+   * @param knowledge the knowledge of the observer's cards, updated to the state, or null to use the card counts alone
+   **/
+  public void prepare(State local, HandKnowledge knowledge){
+    names = local.getPlayers();
+    actions = local.getActionTable();
+    base = new PackedState(local);
+    observer = local.getObserver();
+    local.getUnseenCounts(unseen);
+    hidden = 0;
+    if(observer==-1) return;
+    for(int i = 0; i<base.getHandSize(); i++){
+      if(base.getCard(observer,i)!=PackedState.UNKNOWN) continue;
+      masks[hidden] = knowledge==null?HandKnowledge.ALL:knowledge.getPossible(local, observer, i);
+      positions[hidden++] = i;
+    }
+    int full = (1<<hidden)-1;
+    java.util.Arrays.fill(ways[0], 0);
+    ways[0][0] = 1;
+    for(int id = 0; id<Card.IDENTITIES; id++){
+      allowed[id] = 0;
+      for(int h = 0; h<hidden; h++) if((masks[h]>>id&1)==1) allowed[id]|=1<<h;
+      for(int set = 0; set<=full; set++){
+        long w = 0;
+        int u = set&allowed[id];
+        for(int t = u; ; t = (t-1)&u){
+          w+=ways[id][set&~t]*arrangements(unseen[id], Integer.bitCount(t));
+          if(t==0) break;
+        }
+        ways[id+1][set] = w;
+      }
+    }
+  }
+
+  //the number of ways to give k distinct cards one each of n copies
+  private static long arrangements(int n, int k){
+    long a = 1;
+    for(int j = 0; j<k; j++) a*=n-j;
+    return a<0?0:a;
+  }
+
+  /**
+   * Draws a determinization of the prepared state.
+   * @param out the packed state to write the sample to, which is overwritten, and has no observer
+   * @throws IllegalStateException if prepare has not been called, 
+   * or no deal is consistent with the knowledge, for example if it was updated from another game
+   **/
+  public void sample(PackedState out) throws IllegalStateException{
+    if(base==null) throw new IllegalStateException("No state has been prepared");
+    out.copyFrom(base);
+    deal(out);
+    int size = 0;
+    for(int i = 0; i<Card.IDENTITIES; i++)
+      for(int k = left[i]; k>0; k--) deck[size++] = (byte)i;
+    for(int d = size-1; d>=0; d--){
+      int j = random.nextInt(d+1);
+      byte t = deck[j];
+      deck[j] = deck[d];
+      out.setDeckCard(d, t);
+    }
+    out.setObserver(-1);
+  }
+
+  //fills the hidden cards, leaving the remaining counts in left
+  private void deal(PackedState out){
+    System.arraycopy(unseen, 0, left, 0, Card.IDENTITIES);
+    int set = (1<<hidden)-1;
+    if(ways[Card.IDENTITIES][set]==0) throw new IllegalStateException("No deal is consistent with the knowledge");
+    //choose the hidden cards given each identity, from the last, in proportion to the deals of the rest
+    for(int id = Card.IDENTITIES-1; id>=0 && set!=0; id--){
+      long r = random.nextLong(ways[id+1][set]);
+      int u = set&allowed[id], t = u;
+      for(; ; t = (t-1)&u){
+        r-=ways[id][set&~t]*arrangements(unseen[id], Integer.bitCount(t));
+        if(r<0 || t==0) break;
+      }
+      for(int m = t; m!=0; m&=m-1) out.setCard(observer, positions[Integer.numberOfTrailingZeros(m)], id);
+      left[id]-=Integer.bitCount(t);
+      set&=~t;
+    }
+  }
+
+  /**
+   * Draws a determinization of the prepared state as a global State. The matching deck is given by getDeck.
+   * @return a new global state with no previous states
+   * @throws IllegalStateException if prepare has not been called, or no deal is consistent with the knowledge
+   **/
+  public State sampleState() throws IllegalStateException{
+    if(base==null) throw new IllegalStateException("No state has been prepared");
+    if(sample==null) sample = new PackedState(base);
+    sample(sample);
+    return sample.toState(names, actions);
+  }
+
+  /**
+   * Gives the deck of the last sample drawn by sampleState
+   * @return a new Deck, with the order of the sampled deck
+   * @throws IllegalStateException if sampleState has not been called
+   **/
+  public Deck getDeck() throws IllegalStateException{
+    if(sample==null) throw new IllegalStateException("No state has been sampled");
+    return sample.toDeck();
+  }
+}
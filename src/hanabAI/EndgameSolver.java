@@ -0,0 +1,207 @@
+package hanabAI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * An exact solver for the end of a game, once the deck is empty and the final action is set.
+ * From then on each player has at most one more turn and no cards are drawn,
+ * so the best score of a complete position (such as a sample from a Determinizer) can be found by a full search.
+ * A hint or a discard never changes the score, and the hand of a player who has moved is never used again,
+ * so every hint and discard is searched as a single pass, leaving at most six moves in each position.
+ * Positions are cached in a transposition table keyed by the cards played, the fireworks, the fuse and the turns left,
+ * and a branch stops when its score reaches the bound of one more card for each turn left.
+ * Moves are applied and undone in place on a PackedState, so the search does not allocate.
+ * The moves at the root can be searched in parallel, as ForkJoin tasks.
+ * A solver is not thread safe, but a parallel solver may be called from one thread at a time.
+ **/
+public class EndgameSolver{
+
+  //the size of the transposition table
+  private static final int TABLE_BITS = 12;
+
+  private boolean parallel;
+  //the transposition table: keys (plus one, so 0 is empty) and scores
+  private long[] keys = new long[1<<TABLE_BITS];
+  private byte[] scores = new byte[1<<TABLE_BITS];
+
+  /**
+   * Creates a solver that searches the root moves in parallel
+   **/
+  public EndgameSolver(){
+    this(true);
+  }
+
+  /**
+   * Creates a solver
+   * @param parallel true to search the root moves as parallel ForkJoin tasks, false to search them in the calling thread
+   **/
+  public EndgameSolver(boolean parallel){
+    this.parallel = parallel;
+  }
+
+  /**
+   * Tests whether a position can be solved: the final action has been set, and no card is unknown
+   * @param p the position
+   * @return true if the position can be given to the solver
+   **/
+  public static boolean canSolve(PackedState p){
+    if(p.getFinalActionIndex()==-1 || p.getObserver()!=-1) return false;
+    for(int pl = 0; pl<p.getNumPlayers(); pl++)
+      for(int i = 0; i<p.getHandSize(); i++) if(p.getCard(pl,i)==PackedState.UNKNOWN) return false;
+    return true;
+  }
+
+  /**
+   * Gives the best final score that can be reached after a move
+   * @param p the position, which is left unchanged
+   * @param move a legal move in the position, numbered by the ActionSpace
+   * @return the best final score after the move
+   * @throws IllegalArgumentException if the position cannot be solved
+   **/
+  public int getValue(PackedState p, int move) throws IllegalArgumentException{
+    if(!canSolve(p)) throw new IllegalArgumentException("Position is not a known endgame");
+    ActionSpace space = ActionSpace.get(p.getNumPlayers());
+    int player = p.getNextPlayer();
+    java.util.Arrays.fill(keys, 0);
+    switch(space.getType(move)){
+      case PLAY:
+        int pos = space.getPosition(move);
+        long key = 1L<<(5*player+pos);
+        play(p, pos);
+        int score = search(p, key);
+        p.undo();
+        return score;
+      default:
+        pass(p);
+        score = search(p, 0);
+        p.undo();
+        return score;
+    }
+  }
+
+  /**
+   * Finds the best move in a position
+   * @param p the position, which is left unchanged
+   * @return the move, numbered by the ActionSpace, with the best final score.
+   * If a pass is best, the first legal discard or hint is given.
+   * @throws IllegalArgumentException if the position cannot be solved, or the game is over
+   **/
+  public int getBestMove(PackedState p) throws IllegalArgumentException{
+    if(!canSolve(p) || p.gameOver()) throw new IllegalArgumentException("Position is not a known endgame");
+    ActionSpace space = ActionSpace.get(p.getNumPlayers());
+    int player = p.getNextPlayer();
+    List<Integer> moves = new ArrayList<Integer>();
+    for(int i = 0; i<p.getHandSize(); i++)
+      if(p.legalCardAction(i, false)) moves.add(space.play(player,i));
+    int pass = passMove(p, space);
+    moves.add(pass);
+    int[] values = new int[moves.size()];
+    if(parallel){
+      List<Root> tasks = new ArrayList<Root>();
+      for(int move: moves) tasks.add(new Root(new PackedState(p), move));
+      ForkJoinTask.invokeAll(tasks);
+      for(int i = 0; i<values.length; i++) values[i] = tasks.get(i).join();
+    }
+    else for(int i = 0; i<values.length; i++) values[i] = getValue(p, moves.get(i));
+    int best = 0;
+    for(int i = 1; i<values.length; i++) if(values[i]>values[best]) best = i;
+    return moves.get(best);
+  }
+
+  /**
+   * Finds the best action in a global state
+   * @param s a global state in which the final action has been set
+   * @return the action with the best final score
+   * @throws IllegalArgumentException if the state has an observer, the final action is not set, or the game is over
+   **/
+  public Action getBestAction(State s) throws IllegalArgumentException{
+    return s.getAction(getBestMove(new PackedState(s)));
+  }
+
+  //the first legal discard, or a legal hint if discards are not allowed
+  private static int passMove(PackedState p, ActionSpace space){
+    int player = p.getNextPlayer();
+    for(int i = 0; i<p.getHandSize(); i++)
+      if(p.legalCardAction(i, true)) return space.discard(player,i);
+    for(int k = 1; k<p.getNumPlayers(); k++){
+      int r = (player+k)%p.getNumPlayers();
+      for(int v = 1; v<=5; v++){
+        int mask = p.valueMask(r,v);
+        if(mask==0) continue;
+        try{return space.valueHint(player, r, v, mask);}
+        catch(IllegalActionException e){//cannot occur, as r is another player
+          e.printStackTrace();
+          throw new RuntimeException("Something has gone very wrong");
+        }
+      }
+    }
+    throw new IllegalArgumentException("No legal discard or hint");
+  }
+
+  //the best final score from a position, where key has a bit set for each card played during the search
+  private int search(PackedState p, long key){
+    if(p.gameOver()) return p.getScore();
+    int turns = p.getFinalActionIndex()+1-p.getOrder();
+    int bound = Math.min(25, p.getScore()+turns);
+    long k = key|((long)turns<<25)|((long)p.getFuseTokens()<<28);
+    for(int c = 0; c<5; c++) k|=(long)p.getFireworkHeight(c)<<(30+3*c);
+    int slot = (int)((k*0x9E3779B97F4A7C15L)>>>(64-TABLE_BITS));
+    if(keys[slot]==k+1) return scores[slot];
+    int player = p.getNextPlayer();
+    pass(p);
+    int best = search(p, key);
+    p.undo();
+    //cards of the same identity in one hand lead to the same positions
+    int tried = 0;
+    for(int i = 0; i<p.getHandSize() && best<bound; i++){
+      int id = p.getCard(player,i);
+      if(id<0 || (tried>>id&1)==1) continue;
+      tried|=1<<id;
+      play(p, i);
+      best = Math.max(best, search(p, key|1L<<(5*player+i)));
+      p.undo();
+    }
+    keys[slot] = k+1;
+    scores[slot] = (byte)best;
+    return best;
+  }
+
+  //a move that does not change the score: a hint if there is a token, otherwise a discard
+  private static void pass(PackedState p){
+    if(p.getHintTokens()>0){
+      p.hint();
+      return;
+    }
+    for(int i = 0; i<p.getHandSize(); i++){
+      if(p.getCard(p.getNextPlayer(),i)!=PackedState.EMPTY){
+        p.discard(i);
+        return;
+      }
+    }
+  }
+
+  private static void play(PackedState p, int position){
+    try{p.play(position);}
+    catch(IllegalActionException e){//cannot occur, as every card is known
+      e.printStackTrace();
+      throw new RuntimeException("Something has gone very wrong");
+    }
+  }
+
+  //the search of one root move, with its own solver
+  private static class Root extends RecursiveTask<Integer>{
+    private static final long serialVersionUID = 1L;
+    private PackedState p;
+    private int move;
+
+    Root(PackedState p, int move){
+      this.p = p;
+      this.move = move;
+    }
+
+    protected Integer compute(){return new EndgameSolver(false).getValue(p, move);}
+  }
+}
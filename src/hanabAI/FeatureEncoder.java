@@ -0,0 +1,85 @@
+package hanabAI;
+
+/**
+ * Encodes a local state, as seen by its observer, as a fixed-width vector of floats, for training learned policies.
+ * The width is the same for every number of players, with unused players and positions left as 0.
+ * Players are numbered relative to the observer, who is player 0, so the vector does not depend on the observer's seat.
+ * The features, in order, are:
+ * <ul>
+ * <li>4: the number of players, one-hot from 2 to 5</li>
+ * <li>5: the hint tokens /8, the fuse tokens /3, the cards left in the deck /40, 
+ * 1 if the final round has started, and the turns left in it /5</li>
+ * <li>30: the height of each firework, one-hot from 0 to 5, by colour</li>
+ * <li>25: the discarded copies of each card, as a fraction of its copies, indexed by Card.getIndex</li>
+ * <li>25: the unseen copies of each card, as a fraction of its copies</li>
+ * <li>for each of 5 players, for each of 5 positions, 51: 
+ * 1 if there is a card, the card one-hot (0 for the observer's own cards), 
+ * and the identities the card could have from the hints, less (for the observer's own cards) those with no unseen copies</li>
+ * </ul>
+ * An encoder keeps work arrays, so it should be used by one thread at a time.
+ **/
+public class FeatureEncoder{
+
+  //the offsets of the groups of features
+  private static final int TOKENS = 4, FIREWORKS = 9, DISCARDS = 39, UNSEEN = 64, HANDS = 89;
+  private static final int SLOT = 1+2*Card.IDENTITIES;
+
+  /**The number of features**/
+  public static final int WIDTH = HANDS+25*SLOT;
+
+  //the unseen count of each card
+  private int[] unseen = new int[Card.IDENTITIES];
+
+  /**
+   * Encodes a local state
+   * @param s a local state
+   * @param knowledge the hints given, updated to the state, or null to use only the cards seen
+   * @param out the array the features are written to
+   * @param offset the position in out of the first feature
+   * @throws IllegalArgumentException if the state has no observer
+   **/
+  public void encode(State s, HandKnowledge knowledge, float[] out, int offset) throws IllegalArgumentException{
+    int observer = s.getObserver();
+    if(observer==-1) throw new IllegalArgumentException("State has no observer");
+    java.util.Arrays.fill(out, offset, offset+WIDTH, 0f);
+    int players = s.getPlayerCount();
+    out[offset+players-2] = 1;
+    int left = s.getUnseenCounts(unseen);
+    for(int i = 0; i<s.getHandSize(observer); i++) if(s.hasCard(observer,i)) left--;
+    out[offset+TOKENS] = s.getHintTokens()/8f;
+    out[offset+TOKENS+1] = s.getFuseTokens()/3f;
+    out[offset+TOKENS+2] = left/40f;
+    if(s.getFinalActionIndex()!=-1){
+      out[offset+TOKENS+3] = 1;
+      out[offset+TOKENS+4] = (s.getFinalActionIndex()+1-s.getOrder())/5f;
+    }
+    for(Colour c: Colour.values()) out[offset+FIREWORKS+6*c.ordinal()+s.getFireworkHeight(c)] = 1;
+    for(int i = 0; i<Card.IDENTITIES; i++){
+      out[offset+DISCARDS+i] = (float)s.getDiscardCount(Card.get(i))/Card.count(i);
+      out[offset+UNSEEN+i] = (float)unseen[i]/Card.count(i);
+    }
+    for(int k = 0; k<players; k++){
+      int p = (observer+k)%players;
+      for(int i = 0; i<s.getHandSize(p); i++){
+        if(!s.hasCard(p,i)) continue;
+        int slot = offset+HANDS+(5*k+i)*SLOT;
+        out[slot] = 1;
+        Card c = s.getCard(p,i);
+        if(c!=null) out[slot+1+c.getIndex()] = 1;
+        int mask = knowledge==null?HandKnowledge.ALL:knowledge.getPossible(p,i);
+        if(p==observer) for(int m = mask; m!=0; m&=m-1) if(unseen[Integer.numberOfTrailingZeros(m)]==0) mask&=~(m&-m);
+        for(int m = mask; m!=0; m&=m-1) out[slot+1+Card.IDENTITIES+Integer.numberOfTrailingZeros(m)] = 1;
+      }
+    }
+  }
+
+  /**
+   * Gives an action as a move of the observer, numbered as if they were player 0.
+   * Hints are numbered by the ActionSpace relative to the player giving them,
+   * so this is the ActionSpace move less the first move of the player.
+   * @param space the ActionSpace for the number of players
+   * @param move the move, numbered by the ActionSpace
+   * @return the move, from 0 to space.size()/space.getPlayers()-1
+   **/
+  public static int relativeMove(ActionSpace space, int move){return move%(space.size()/space.getPlayers());}
+}
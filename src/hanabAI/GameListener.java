@@ -0,0 +1,35 @@
+package hanabAI;
+
+/**
+ * An interface for receiving the events of a game as it is played, for example to log or record games.
+ * The states passed are global states, so listeners see every hand.
+ * A listener may be shared by games running on different threads, 
+ * so implementations should not assume the events of different games arrive in order.
+ * */
+public interface GameListener{
+
+  /**
+   * Called before the first move of a game
+   * @param game an identifier for the game, such as the seed of its deal
+   * @param initial the first state of the game
+   * */
+  public void gameStarted(long game, State initial);
+
+  /**
+   * Called after each move of a game
+   * @param game an identifier for the game
+   * @param before the state in which the action was performed
+   * @param action the action performed
+   * @param after the state resulting from the action
+   * */
+  public void actionPerformed(long game, State before, Action action, State after);
+
+  /**
+   * Called when a game is over, or is abandoned
+   * @param game an identifier for the game
+   * @param last the last state of the game
+   * @param score the final score, or -1 if the game was abandoned due to an illegal action
+   * */
+  public void gameEnded(long game, State last, int score);
+
+}
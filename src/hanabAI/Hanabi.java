@@ -1,5 +1,12 @@
 package hanabAI;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A class for running a single game of Hanabi.
@@ -8,34 +15,105 @@ package hanabAI;
  * */
 public class Hanabi{
 
+  //threads for calling agents with a time limit, which do not prevent the program exiting
+  private static final ExecutorService MOVERS = Executors.newCachedThreadPool(new ThreadFactory(){
+    public Thread newThread(Runnable r){
+      Thread t = new Thread(r, "hanabi-agent");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
   private Agent[] players;
   private State state;
-  private java.util.Stack<Card> deck;
+  private Deck deck;
+  private TimeBudget budget;
+  private LatencyHistogram[] latencies;
+  //the time used by each player, and any call that has exceeded its time
+  private long[] used;
+  private Future<?>[] late;
+  private int forfeit = -1;
+  //the illegal action that ended the last game played with a listener, if any
+  private IllegalActionException error;
 
   /**
    * Initilaises the game.
    * @throws IllegalArgumentException if there are not the right number of player
    * */ 
   public Hanabi(Agent[] agents) throws IllegalArgumentException{
+    this(agents, new Deck(new java.util.SplittableRandom()));
+  }
+
+  /**
+   * Initialises the game with a given deck, so that deals can be reproduced.
+   * @param agents the agents playing the game, by index
+   * @param deck the shuffled deck of cards to be used for the game. The game takes every card from the stack, leaving it empty.
+   * @throws IllegalArgumentException if there are not the right number of player
+   * */ 
+  public Hanabi(Agent[] agents, java.util.Stack<Card> deck) throws IllegalArgumentException{
+    this(agents, Deck.drain(deck));
+  }
+
+  /**
+   * Initialises the game with a given deck, so that deals can be reproduced.
+   * @param agents the agents playing the game, by index
+   * @param deck the shuffled deck of cards to be used for the game
+   * @throws IllegalArgumentException if there are not the right number of player
+   * */ 
+  public Hanabi(Agent[] agents, Deck deck) throws IllegalArgumentException{
+    this(agents, deck, HistoryPolicy.FULL);
+  }
+
+  /**
+   * Initialises the game with a given deck and history policy.
+   * @param agents the agents playing the game, by index
+   * @param deck the shuffled deck of cards to be used for the game
+   * @param history the policy for how many previous states each state keeps
+   * @throws IllegalArgumentException if there are not the right number of player
+   * */ 
+  public Hanabi(Agent[] agents, Deck deck, HistoryPolicy history) throws IllegalArgumentException{
     //check agents between 2 and 5
     players = agents;
-    deck = Card.shuffledDeck();
+    this.deck = deck;
     String[] s = new String[agents.length];
     for(int i=0; i<s.length; i++)s[i] = agents[i].toString();
-    state = new State(s, deck);
+    state = new State(s, deck, history);
   }
 
+  /**
+   * Sets time limits for the agents' moves.
+   * Without a budget, agents are called directly and may take as long as they like.
+   * @param budget the time budget, or null for no limit
+   **/
+  public void setTimeBudget(TimeBudget budget){this.budget = budget;}
+
+  /**
+   * Records each agent's decision time in a histogram for its name and the number of players.
+   * @param recorder the recorder to add the times to, or null to stop recording
+   **/
+  public void setLatencyRecorder(LatencyRecorder recorder){
+    if(recorder==null){latencies = null; return;}
+    latencies = new LatencyHistogram[players.length];
+    for(int i = 0; i<players.length; i++) latencies[i] = recorder.get(players[i].toString(), players.length);
+  }
+
+  /**
+   * Gives the player that forfeited the game by exceeding the time budget
+   * @return the index of the player, or -1 if no player has forfeited
+   **/
+  public int getForfeit(){return forfeit;}
+
   /**
    * Plays the game.
    * The agents will execute their strategies until the game is complete and a number is returned.
-   * @return the score for the game
+   * @return the score for the game, or -1 if an agent made an illegal move or forfeited
    **/
   public int play(){
     try{
       while(!state.gameOver()){
         int p = state.getNextPlayer();
         State localState = state.hideHand(p);
-        state = state.nextState(players[p].doAction(localState),deck);
+        state = state.nextState(move(p, localState),deck);
       }
       return state.getScore();
     }
@@ -43,28 +121,113 @@ public class Hanabi{
   }
 
   /**
-   * Plays the game.
+   * Plays the game, reporting each move to a listener.
    * The agents will execute their strategies until the game is complete and a number is returned.
-   * @param log a StringBuffer containing a description of the game
-   * @return the score of the game
+   * @param listener the listener receiving the events of the game
+   * @param game an identifier for the game, passed to the listener
+   * The listener is told the game has ended even if an agent throws an exception, which is then rethrown.
+   * @return the score for the game, or -1 if an agent made an illegal move or forfeited
    **/
-  public int play(StringBuffer log){
-    log.append(state);
+  public int play(GameListener listener, long game){
+    listener.gameStarted(game, state);
+    int score = -1;
     try{
       while(!state.gameOver()){
         int p = state.getNextPlayer();
         State localState = state.hideHand(p);
-        state = state.nextState(players[p].doAction(localState),deck);
-        log.append(state.toString());
+        Action a = move(p, localState);
+        State next = state.nextState(a,deck);
+        listener.actionPerformed(game, state, a, next);
+        state = next;
       }
-      return state.getScore();
+      score = state.getScore();
+    }
+    catch(IllegalActionException e){error = e;}
+    finally{listener.gameEnded(game, state, score);}//also reports a game abandoned by an agent throwing an exception
+    return score;
+  }
+
+  //asks an agent for its action, enforcing the time budget and recording its decision time
+  private Action move(int p, State localState) throws IllegalActionException{
+    if(budget==null){
+      long start = System.nanoTime();
+      Action a = players[p].doAction(localState);
+      if(latencies!=null) latencies[p].record(System.nanoTime()-start);
+      return a;
+    }
+    if(used==null){
+      used = new long[players.length];
+      late = new Future<?>[players.length];
+    }
+    if(late[p]!=null && !late[p].isDone()) return timeout(p, localState);
+    late[p] = null;
+    long limit = Math.min(budget.getMoveNanos(), budget.getGameNanos()-used[p]);
+    if(limit<=0) return timeout(p, localState);
+    final Agent agent = players[p];
+    final State local = localState;
+    long start = System.nanoTime();
+    Future<Action> f = MOVERS.submit(new java.util.concurrent.Callable<Action>(){
+      public Action call(){return agent.doAction(local);}
+    });
+    try{
+      Action a = f.get(limit, TimeUnit.NANOSECONDS);
+      long time = System.nanoTime()-start;
+      used[p]+=time;
+      if(latencies!=null) latencies[p].record(time);
+      return a;
+    }
+    catch(TimeoutException e){
+      long time = System.nanoTime()-start;
+      used[p]+=time;
+      if(latencies!=null) latencies[p].record(time);
+      f.cancel(true);
+      late[p] = f;
+      return timeout(p, localState);
+    }
+    catch(InterruptedException e){
+      f.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalActionException("Interrupted");
+    }
+    catch(ExecutionException e){
+      if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+      throw new RuntimeException(e.getCause());
     }
-    catch(IllegalActionException e){
-      e.printStackTrace();
-      return -1;
+  }
+
+  //applies the budget's policy when a player has run out of time
+  private Action timeout(int p, State localState) throws IllegalActionException{
+    if(budget.isForfeit()){
+      forfeit = p;
+      throw new IllegalActionException("Player "+p+" exceeded the time budget");
     }
+    return budget.fallback(localState);
   }
 
+  /**
+   * Plays the game.
+   * The agents will execute their strategies until the game is complete and a number is returned.
+   * @param log a StringBuffer containing a description of the game
+   * @return the score of the game
+   **/
+  public int play(final StringBuffer log){
+    error = null;
+    int score = play(new GameListener(){
+      public void gameStarted(long game, State initial){log.append(initial);}
+      public void actionPerformed(long game, State before, Action action, State after){log.append(after);}
+      public void gameEnded(long game, State last, int score){}
+    }, 0);
+    if(error!=null) error.printStackTrace();
+    return score;
+  }
+
+  /**
+   * Gets the current state of the game.
+   * Once play has returned this is the final state, which can be used to see how the game ended.
+   * @return the current (global) state of the game
+   **/
+  public State getState(){return state;}
+
   public static String critique(int score){
     if(score==0) return "Tragic: The pyrotechnicians are obliterated by their own incompetence.\n";
     if(score<6) return "Horrible: boos from the crowd.\n";
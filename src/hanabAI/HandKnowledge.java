@@ -0,0 +1,247 @@
+package hanabAI;
+
+/**
+ * The public knowledge about every card in the players hands, from the hints they have been given.
+ * For each position of each hand the tracker keeps a 25 bit mask of the identities the card could still have,
+ * where bit i stands for Card.get(i). A hint removes the other colours or values from the cards it indicates,
+ * and removes the hinted colour or value from the cards it does not indicate, and a card drawn starts with every identity possible.
+ * The masks are updated incrementally from the action log, so each action is read once however often the tracker is updated,
+ * and only depend on the actions made, so one tracker may be shared by all the agents of a game.
+ * The queries combine the masks with the card counts of a State, so they reflect what its observer can see:
+ * for another players cards, probabilities are weighted by the copies that player cannot see, as far as the observer can tell.
+ **/
+public class HandKnowledge{
+
+  /**The mask in which every identity is possible**/
+  public static final int ALL = (1<<Card.IDENTITIES)-1;
+  //the mask of the identities with value 1, one bit for each colour
+  private static final int VALUE = 0x108421;
+
+  private int players;
+  private int handSize;
+  //the possible identities of each card, indexed by player*handSize+position, or 0 for an empty position
+  private int[] masks;
+  //the order of the state the tracker has been updated to
+  private int turn = -1;
+
+  /**
+   * Creates a tracker for a game
+   * @param players the number of players in the game
+   * @throws IllegalArgumentException if players is not between 2 and 5
+   **/
+  public HandKnowledge(int players) throws IllegalArgumentException{
+    if(players<2 || players>5) throw new IllegalArgumentException("incorrect number of players");
+    this.players = players;
+    this.handSize = players>3?4:5;
+    masks = new int[players*handSize];
+  }
+
+  /**
+   * Gives the mask of the identities with a colour
+   * @param c the colour
+   * @return a mask with a bit set for each card of the colour
+   **/
+  public static int colourMask(Colour c){return 0x1F<<(5*c.ordinal());}
+
+  /**
+   * Gives the mask of the identities with a value
+   * @param value the value, from 1 to 5
+   * @return a mask with a bit set for each card of the value
+   **/
+  public static int valueMask(int value){return VALUE<<(value-1);}
+
+  /**
+   * Brings the tracker up to date with a state, reading the actions made since the last update.
+   * If the state is earlier than the last update, the knowledge is rebuilt from the start of the log.
+   * The states given to a tracker should all be from the same game.
+   * @param s a state of the game, global or local
+   * @throws IllegalArgumentException if the state has a different number of players
+   **/
+  public void update(State s) throws IllegalArgumentException{
+    if(s.getPlayerCount()!=players) throw new IllegalArgumentException("incorrect number of players");
+    if(turn<s.getLogStart() || turn>s.getOrder()){
+      State root = s.getLogRoot();
+      for(int p = 0; p<players; p++)
+        for(int i = 0; i<handSize; i++) masks[p*handSize+i] = root.hasCard(p,i)?ALL:0;
+      turn = root.getOrder();
+    }
+    for(; turn<s.getOrder(); turn++) apply(s.getHistoryAction(turn), s.drewCard(turn));
+  }
+
+  //updates the masks for one action
+  private void apply(Action a, boolean drawn){
+    try{
+      switch(a.getType()){
+        case PLAY:
+        case DISCARD:
+          masks[a.getPlayer()*handSize+a.getCard()] = drawn?ALL:0;
+          break;
+        case HINT_COLOUR:
+          hint(a.getHintReceiver(), a.getHintMask(), colourMask(a.getColour()));
+          break;
+        case HINT_VALUE:
+          hint(a.getHintReceiver(), a.getHintMask(), valueMask(a.getValue()));
+          break;
+      }
+    }
+    catch(IllegalActionException e){//cannot occur, as the fields match the type
+      e.printStackTrace();
+      throw new RuntimeException("Something has gone very wrong");
+    }
+  }
+
+  //keeps the hinted identities for the positions hinted, and removes them from the rest
+  private void hint(int receiver, int positions, int identities){
+    for(int i = 0; i<handSize; i++){
+      int k = receiver*handSize+i;
+      masks[k]&=((positions>>i&1)==1)?identities:~identities;
+    }
+  }
+
+  /**@return the order of the last state the tracker was updated to, or -1 if it has not been updated**/
+  public int getTurn(){return turn;}
+
+  /**
+   * Gives the identities a card could have, from the hints alone
+   * @param player the player holding the card
+   * @param position the position of the card
+   * @return the mask of possible identities, or 0 if the position is empty
+   **/
+  public int getPossible(int player, int position){return masks[player*handSize+position];}
+
+  /**
+   * Gives the identities a card could have, given the cards that the observer of a state can see.
+   * For the observers own cards, identities with no unseen copies are removed.
+   * @param s the state, updated to by this tracker
+   * @param player the player holding the card
+   * @param position the position of the card
+   * @return the mask of possible identities, or 0 if the position is empty
+   **/
+  public int getPossible(State s, int player, int position){
+    int mask = masks[player*handSize+position];
+    if(player!=s.getObserver()) return mask;
+    for(int m = mask; m!=0; m&=m-1){
+      int i = Integer.numberOfTrailingZeros(m);
+      if(s.getUnseenCount(Card.get(i))==0) mask&=~(1<<i);
+    }
+    return mask;
+  }
+
+  /**
+   * Gives the colour of a card, if the hints have shown it
+   * @return the colour of the card, or null if it is not known
+   **/
+  public Colour getKnownColour(int player, int position){
+    int mask = masks[player*handSize+position];
+    if(mask==0) return null;
+    Colour c = Colour.values()[Integer.numberOfTrailingZeros(mask)/5];
+    return (mask&~colourMask(c))==0?c:null;
+  }
+
+  /**
+   * Gives the value of a card, if the hints have shown it
+   * @return the value of the card, or 0 if it is not known
+   **/
+  public int getKnownValue(int player, int position){
+    int mask = masks[player*handSize+position];
+    if(mask==0) return 0;
+    int v = Integer.numberOfTrailingZeros(mask)%5+1;
+    return (mask&~valueMask(v))==0?v:0;
+  }
+
+  /**
+   * Gives the identities that could be played in a state
+   * @param s the state
+   * @return the mask of the next card of each firework that is not complete
+   **/
+  public static int playableMask(State s){
+    int mask = 0;
+    for(Colour c: Colour.values()){
+      int h = s.getFireworkHeight(c);
+      if(h<5) mask|=1<<(5*c.ordinal()+h);
+    }
+    return mask;
+  }
+
+  /**
+   * Gives the identities that can no longer score in a state: 
+   * cards already played, and cards above a value whose copies have all been discarded
+   * @param s the state
+   * @return the mask of the dead identities
+   **/
+  public static int deadMask(State s){
+    int mask = 0;
+    for(Colour c: Colour.values()){
+      int h = s.getFireworkHeight(c);
+      int lost = h+1;
+      while(lost<=5 && s.getDiscardCount(c,lost)<Card.count(Card.index(c,lost))) lost++;
+      mask|=deadValues(h, lost)<<(5*c.ordinal());
+    }
+    return mask;
+  }
+
+  /**
+   * Gives the values of one colour that can no longer score
+   * @param height the height of the firework
+   * @param lost the lowest value above the height whose copies have all been discarded, or 6 if there is none
+   * @return the mask of the dead values, where bit v-1 is set if value v is dead: 
+   * the values up to the height, and the values from lost up
+   **/
+  public static int deadValues(int height, int lost){
+    return ((1<<height)-1)|(0x1F&~((1<<(lost-1))-1));
+  }
+
+  /**
+   * Tests whether a card is certainly playable, from what the observer of the state knows
+   * @param s the state, updated to by this tracker
+   * @return true if every possible identity of the card can be played
+   **/
+  public boolean isDefinitelyPlayable(State s, int player, int position){
+    int mask = getPossible(s, player, position);
+    return mask!=0 && (mask&~playableMask(s))==0;
+  }
+
+  /**
+   * Tests whether a card certainly cannot score, from what the observer of the state knows
+   * @param s the state, updated to by this tracker
+   * @return true if every possible identity of the card is dead
+   **/
+  public boolean isDefinitelyDead(State s, int player, int position){
+    int mask = getPossible(s, player, position);
+    return mask!=0 && (mask&~deadMask(s))==0;
+  }
+
+  /**
+   * Gives the probability that a card is playable, weighting each possible identity by its number of unseen copies
+   * @param s the state, updated to by this tracker
+   * @return the probability the card can be played, or 0 if the position is empty
+   **/
+  public double getPlayableProbability(State s, int player, int position){
+    return probability(s, player, getPossible(s, player, position), playableMask(s));
+  }
+
+  /**
+   * Gives the probability that a card cannot score, weighting each possible identity by its number of unseen copies
+   * @param s the state, updated to by this tracker
+   * @return the probability the card is dead, or 0 if the position is empty
+   **/
+  public double getDeadProbability(State s, int player, int position){
+    return probability(s, player, getPossible(s, player, position), deadMask(s));
+  }
+
+  //the weight of the identities in both masks, as a fraction of the weight of the possible identities.
+  //for another players card, the copies in their own hand are unseen by them, so are added to the weight
+  private static double probability(State s, int player, int possible, int event){
+    int total = 0, hits = 0;
+    for(int m = possible; m!=0; m&=m-1){
+      int i = Integer.numberOfTrailingZeros(m);
+      Card c = Card.get(i);
+      int w = s.getUnseenCount(c);
+      if(player!=s.getObserver())
+        for(int j = 0; j<s.getHandSize(player); j++) if(c.equals(s.getCard(player,j))) w++;
+      total+=w;
+      if((event>>i&1)==1) hits+=w;
+    }
+    return total==0?0:(double)hits/total;
+  }
+}
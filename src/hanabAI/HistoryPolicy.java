@@ -0,0 +1,41 @@
+package hanabAI;
+
+/**
+ * A policy for how many previous states a State keeps alive.
+ * Every state can still reach all previous states with getPreviousState: 
+ * states that are not kept are rebuilt on demand by replaying the game's action log from its first state.
+ * Keeping fewer states reduces the memory held by long games, and by agents that store states,
+ * at the cost of rebuilding older states when they are requested.
+ **/
+public class HistoryPolicy{
+
+  /**Every previous state is kept, which is the default**/
+  public static final HistoryPolicy FULL = new HistoryPolicy(Integer.MAX_VALUE);
+  /**No previous states are kept: only the first state and the action log**/
+  public static final HistoryPolicy LOG_ONLY = new HistoryPolicy(0);
+
+  private int depth;
+
+  private HistoryPolicy(int depth){this.depth = depth;}
+
+  /**
+   * Gives a policy that keeps a fixed number of previous states.
+   * As states are never changed once created, a state may keep up to 2k-1 previous states,
+   * before a new state starts a chain of copies of the last k.
+   * @param k the number of previous states each state keeps
+   * @return a policy keeping the last k states
+   * @throws IllegalArgumentException if k is negative
+   **/
+  public static HistoryPolicy lastK(int k) throws IllegalArgumentException{
+    if(k<0) throw new IllegalArgumentException("negative history");
+    return k==0?LOG_ONLY:new HistoryPolicy(k);
+  }
+
+  /**@return the number of previous states kept by each state**/
+  public int getDepth(){return depth;}
+
+  /**@return a description of the policy**/
+  public String toString(){
+    return depth==Integer.MAX_VALUE?"Full history":(depth==0?"Action log only":"Last "+depth+" states");
+  }
+}
@@ -0,0 +1,163 @@
+package hanabAI;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A GameListener that writes each game as JSON Lines: one object for the start, each move, and the end of the game.
+ * Cards are written by index (see Card.getIndex), and text descriptions are left to whoever reads the log.
+ * The lines of a game are collected in a buffer for the thread playing it, and written together,
+ * so one writer can be shared by the games of a tournament, taking one lock per game.
+ * Output errors are recorded rather than thrown during play, and reported by checkError and close.
+ **/
+public class JsonLinesWriter implements GameListener{
+
+  //the size at which a games buffer is written before the game ends
+  private static final int FLUSH_SIZE = 1<<16;
+
+  private Writer out;
+  private IOException error;
+  private ThreadLocal<StringBuilder> buffers = new ThreadLocal<StringBuilder>(){
+    protected StringBuilder initialValue(){return new StringBuilder(FLUSH_SIZE);}
+  };
+
+  /**
+   * Creates a writer for a stream
+   * @param out the stream the lines are written to
+   **/
+  public JsonLinesWriter(Writer out){
+    this.out = (out instanceof BufferedWriter)?out:new BufferedWriter(out, FLUSH_SIZE);
+  }
+
+  /**
+   * Creates a writer for a file
+   * @param file the name of the file, which is replaced if it exists
+   * @throws IOException if the file cannot be opened
+   **/
+  public JsonLinesWriter(String file) throws IOException{
+    this(new FileWriter(file));
+  }
+
+  /**
+   * Writes the players and the deal.
+   **/
+  public void gameStarted(long game, State initial){
+    buffers.get().setLength(0);
+    StringBuilder sb = begin(game, "start");
+    sb.append(",\"players\":[");
+    int players = initial.getPlayerCount();
+    for(int p = 0; p<players; p++){
+      if(p>0) sb.append(',');
+      quote(sb, initial.getName(p));
+    }
+    sb.append("],\"hands\":[");
+    int handSize = initial.getHandSize(0);
+    for(int p = 0; p<players; p++){
+      sb.append(p>0?",[":"[");
+      for(int i = 0; i<handSize; i++){
+        if(i>0) sb.append(',');
+        card(sb, initial.card(p,i));
+      }
+      sb.append(']');
+    }
+    sb.append("]}\n");
+    flush(sb, false);
+  }
+
+  /**
+   * Writes the action, the card played or discarded, the card drawn, and the resulting tokens and score.
+   **/
+  public void actionPerformed(long game, State before, Action action, State after){
+    StringBuilder sb = begin(game, "move");
+    sb.append(",\"turn\":").append(before.getOrder()).append(",\"player\":").append(action.getPlayer());
+    try{
+      switch(action.getType()){
+        case PLAY:
+        case DISCARD:
+          int pos = action.getCard();
+          sb.append(action.getType()==ActionType.PLAY?",\"type\":\"play\"":",\"type\":\"discard\"");
+          sb.append(",\"pos\":").append(pos).append(",\"card\":");
+          card(sb, before.card(action.getPlayer(), pos));
+          sb.append(",\"drawn\":");
+          card(sb, after.card(action.getPlayer(), pos));
+          break;
+        case HINT_COLOUR:
+          sb.append(",\"type\":\"colour\",\"to\":").append(action.getHintReceiver());
+          sb.append(",\"colour\":").append(action.getColour().ordinal()).append(",\"mask\":").append(action.getHintMask());
+          break;
+        case HINT_VALUE:
+          sb.append(",\"type\":\"value\",\"to\":").append(action.getHintReceiver());
+          sb.append(",\"value\":").append(action.getValue()).append(",\"mask\":").append(action.getHintMask());
+          break;
+      }
+    }
+    catch(IllegalActionException e){//cannot occur, as the fields match the type
+      e.printStackTrace();
+      throw new RuntimeException("Could not write the move: "+action);
+    }
+    sb.append(",\"hints\":").append(after.getHintTokens()).append(",\"fuse\":").append(after.getFuseTokens());
+    sb.append(",\"score\":").append(after.getScore()).append("}\n");
+    flush(sb, false);
+  }
+
+  /**
+   * Writes the final score and number of turns, and writes the games lines to the output.
+   **/
+  public void gameEnded(long game, State last, int score){
+    StringBuilder sb = begin(game, "end");
+    sb.append(",\"score\":").append(score).append(",\"turns\":").append(last.getOrder()).append("}\n");
+    flush(sb, true);
+  }
+
+  /**
+   * Tests whether an error has occurred writing the output
+   * @return the first error, or null if there has been none
+   **/
+  public synchronized IOException checkError(){return error;}
+
+  /**
+   * Writes any buffered output, and closes the stream.
+   * @throws IOException if an error occurred at any time writing the output
+   **/
+  public synchronized void close() throws IOException{
+    try{out.close();}
+    catch(IOException e){if(error==null) error = e;}
+    if(error!=null) throw error;
+  }
+
+  //starts a line for an event
+  private StringBuilder begin(long game, String event){
+    StringBuilder sb = buffers.get();
+    return sb.append("{\"game\":").append(game).append(",\"event\":\"").append(event).append('"');
+  }
+
+  //writes the buffer if the game is over, or the buffer is full
+  private void flush(StringBuilder sb, boolean end){
+    if(!end && sb.length()<FLUSH_SIZE) return;
+    synchronized(this){
+      try{if(error==null) out.append(sb);}
+      catch(IOException e){error = e;}
+    }
+    sb.setLength(0);
+  }
+
+  //writes a card index, or null for an empty position
+  private static void card(StringBuilder sb, Card c){
+    if(c==null) sb.append("null");
+    else sb.append(c.getIndex());
+  }
+
+  //writes a JSON string
+  private static void quote(StringBuilder sb, String s){
+    sb.append('"');
+    for(int i = 0; i<s.length(); i++){
+      char c = s.charAt(i);
+      if(c=='"' || c=='\\') sb.append('\\').append(c);
+      else if(c<' ') sb.append(String.format("\\u%04x", (int)c));
+      else sb.append(c);
+    }
+    sb.append('"');
+  }
+}
@@ -0,0 +1,91 @@
+package hanabAI;
+
+/**
+ * A histogram of durations in nanoseconds, with buckets whose width grows with the duration,
+ * so that every recorded value is within 1/16 (about 6%) of its bucket's lower bound.
+ * Recording is an array increment, and histograms from different threads are combined with merge.
+ **/
+public class LatencyHistogram{
+
+  //the number of buckets for each power of two
+  private static final int SUB_BITS = 4;
+  private static final int SUB = 1<<SUB_BITS;
+
+  private long[] counts = new long[64*SUB];
+  private long count;
+  private long total;
+  private long max;
+
+  /**
+   * Records a duration
+   * @param nanos the duration in nanoseconds (negative values are recorded as 0)
+   **/
+  public void record(long nanos){
+    if(nanos<0) nanos = 0;
+    counts[bucket(nanos)]++;
+    count++;
+    total+=nanos;
+    if(nanos>max) max = nanos;
+  }
+
+  /**
+   * Adds all the durations recorded in another histogram to this one.
+   * @param other the histogram to add
+   * @return this histogram, to allow chaining
+   **/
+  public LatencyHistogram merge(LatencyHistogram other){
+    for(int i = 0; i<counts.length; i++) counts[i]+=other.counts[i];
+    count+=other.count;
+    total+=other.total;
+    max = Math.max(max, other.max);
+    return this;
+  }
+
+  /**@return the number of durations recorded**/
+  public long getCount(){return count;}
+
+  /**@return the largest duration recorded, in nanoseconds**/
+  public long getMax(){return max;}
+
+  /**@return the mean duration, in nanoseconds, or 0 if none have been recorded**/
+  public double getMean(){return count==0?0:(double)total/count;}
+
+  /**
+   * Gives a percentile of the recorded durations
+   * @param p the percentile, between 0 and 100
+   * @return the lower bound of the bucket containing the percentile, in nanoseconds, or 0 if none have been recorded
+   **/
+  public long getPercentile(double p){
+    if(count==0) return 0;
+    long rank = Math.max(1,(long)Math.ceil(p/100*count));
+    long seen = 0;
+    for(int i = 0; i<counts.length; i++){
+      seen+=counts[i];
+      if(seen>=rank) return Math.min(lowerBound(i), max);
+    }
+    return max;
+  }
+
+  //values below SUB have their own bucket, and each power of two above is divided into SUB buckets
+  private static int bucket(long v){
+    if(v<SUB) return (int)v;
+    int exp = 63-Long.numberOfLeadingZeros(v);
+    return (exp-SUB_BITS+1)*SUB+(int)((v>>(exp-SUB_BITS))&(SUB-1));
+  }
+
+  //the smallest value in a bucket
+  private static long lowerBound(int bucket){
+    if(bucket<SUB) return bucket;
+    int exp = bucket/SUB+SUB_BITS-1;
+    return (1L<<exp)|((long)(bucket%SUB)<<(exp-SUB_BITS));
+  }
+
+  /**
+   * A summary of the histogram
+   * @return the count, mean, median, 99th percentile and maximum, in microseconds
+   **/
+  public String toString(){
+    return String.format("n=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus", 
+        count, getMean()/1e3, getPercentile(50)/1e3, getPercentile(99)/1e3, max/1e3);
+  }
+}
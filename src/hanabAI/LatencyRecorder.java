@@ -0,0 +1,53 @@
+package hanabAI;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A collection of LatencyHistograms of agents' decision times, by agent name and number of players.
+ * A recorder is not thread safe: each thread should keep its own, and combine them with merge.
+ **/
+public class LatencyRecorder{
+
+  private Map<String,LatencyHistogram[]> histograms = new TreeMap<String,LatencyHistogram[]>();
+
+  /**
+   * Gets the histogram for an agent, creating it if necessary
+   * @param agent the name of the agent
+   * @param players the number of players in the game, from 2 to 5
+   * @return the histogram of the agent's decision times in games with that number of players
+   **/
+  public LatencyHistogram get(String agent, int players){
+    LatencyHistogram[] h = histograms.get(agent);
+    if(h==null){
+      h = new LatencyHistogram[6];
+      histograms.put(agent, h);
+    }
+    if(h[players]==null) h[players] = new LatencyHistogram();
+    return h[players];
+  }
+
+  /**
+   * Adds all the durations recorded in another recorder to this one.
+   * @param other the recorder to add
+   * @return this recorder, to allow chaining
+   **/
+  public LatencyRecorder merge(LatencyRecorder other){
+    for(Map.Entry<String,LatencyHistogram[]> e: other.histograms.entrySet())
+      for(int n = 0; n<6; n++)
+        if(e.getValue()[n]!=null) get(e.getKey(), n).merge(e.getValue()[n]);
+    return this;
+  }
+
+  /**
+   * A summary of every histogram
+   * @return a line for each agent and number of players
+   **/
+  public String toString(){
+    StringBuilder sb = new StringBuilder();
+    for(Map.Entry<String,LatencyHistogram[]> e: histograms.entrySet())
+      for(int n = 0; n<6; n++)
+        if(e.getValue()[n]!=null) sb.append(e.getKey()).append(" (").append(n).append(" players): ").append(e.getValue()[n]).append('\n');
+    return sb.toString();
+  }
+}
@@ -0,0 +1,465 @@
+package hanabAI;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * A compact, mutable representation of a game state, for agents that simulate many games.
+ * The whole position, including the order of the remaining deck, is held in a single byte array,
+ * so a state can be copied with one array copy, and moves are applied in place without allocating.
+ * Cards are stored by index (see Card.getIndex), with EMPTY for an empty position,
+ * and UNKNOWN for a card the observer cannot see.
+ * The history of the game (previous states and actions) is not represented,
+ * but each move applied is recorded in an undo journal, so a depth-first search can step back with undo
+ * rather than copying the state at each level. A journal entry is a single int holding the replaced card
+ * and the tokens, player, firework and counts the move changed: the cards drawn and discarded stay in the array beyond the counts.
+ **/
+public class PackedState{
+
+  /**The code for an empty position in a hand**/
+  public static final byte EMPTY = -1;
+  /**The code for a card that is hidden from the observer**/
+  public static final byte UNKNOWN = 25;
+
+  //offsets into the data array
+  private static final int PLAYERS = 0;
+  private static final int HAND_SIZE = 1;
+  private static final int HINTS = 2;
+  private static final int FUSE = 3;
+  private static final int NEXT = 4;
+  private static final int OBSERVER = 5;
+  private static final int ORDER = 6;//2 bytes
+  private static final int FINAL = 8;//2 bytes
+  private static final int DECK_SIZE = 10;
+  private static final int DISCARD_SIZE = 11;
+  private static final int SCORE = 12;
+  private static final int FIREWORKS = 13;//5 bytes
+  private static final int HANDS = 18;//5 bytes per player
+  private static final int DISCARDS = 43;//50 bytes
+  private static final int DECK = 93;//50 bytes, top of the deck last
+  /**The number of bytes in a packed state**/
+  public static final int BYTES = 143;
+
+  private byte[] data = new byte[BYTES];
+  //the undo journal, with one entry for each move applied since the state was created or copied
+  private int[] journal;
+  private int depth;
+
+  /**
+   * Creates a packed copy of another packed state
+   * @param other the state to copy
+   **/
+  public PackedState(PackedState other){
+    copyFrom(other);
+  }
+
+  /**
+   * Creates a packed state from a State, where the order of the remaining cards is unknown.
+   * If the state has an observer, the observer's cards are UNKNOWN.
+   * @param s the state to encode
+   **/
+  public PackedState(State s){
+    this(s, null);
+  }
+
+  /**
+   * Creates a packed state from a State and the cards remaining in the deck.
+   * If the state has an observer, the observer's cards are UNKNOWN.
+   * @param s the state to encode
+   * @param deck the remaining deck, or null if the order is unknown. The deck is not modified.
+   * @throws IllegalArgumentException if the deck does not have the number of cards missing from the state
+   **/
+  public PackedState(State s, Deck deck) throws IllegalArgumentException{
+    int players = s.getPlayerCount();
+    int handSize = s.getHandSize(0);
+    data[PLAYERS] = (byte)players;
+    data[HAND_SIZE] = (byte)handSize;
+    data[HINTS] = (byte)s.getHintTokens();
+    data[FUSE] = (byte)s.getFuseTokens();
+    data[NEXT] = (byte)(s.gameOver()?-1:s.getNextPlayer());
+    data[OBSERVER] = (byte)s.getObserver();
+    setShort(ORDER, s.getOrder());
+    setShort(FINAL, s.getFinalActionIndex());
+    int cards = 0;
+    for(int p = 0; p<players; p++){
+      for(int i = 0; i<5; i++){
+        byte b = EMPTY;
+        if(i<handSize && s.hasCard(p,i)){
+          b = (p==s.getObserver()?UNKNOWN:(byte)s.card(p,i).getIndex());
+          cards++;
+        }
+        data[HANDS+5*p+i] = b;
+      }
+    }
+    List<Card> discards = s.getDiscardView();
+    data[DISCARD_SIZE] = (byte)discards.size();
+    for(int i = 0; i<discards.size(); i++) data[DISCARDS+i] = (byte)discards.get(i).getIndex();
+    int score = 0;
+    for(Colour c: Colour.values()){
+      int h = s.getFireworkHeight(c);
+      data[FIREWORKS+c.ordinal()] = (byte)h;
+      score+=h;
+    }
+    data[SCORE] = (byte)score;
+    int deckSize = Deck.SIZE-cards-discards.size()-score;
+    if(deck!=null && deck.size()!=deckSize) throw new IllegalArgumentException("Deck does not match state");
+    data[DECK_SIZE] = (byte)deckSize;
+    for(int i = 0; i<deckSize; i++) data[DECK+i] = (deck==null?UNKNOWN:(byte)deck.getCardIndex(deckSize-1-i));
+  }
+
+  /**
+   * Copies another packed state into this one, without allocating
+   * @param other the state to copy
+   **/
+  public void copyFrom(PackedState other){
+    System.arraycopy(other.data, 0, data, 0, BYTES);
+    depth = 0;
+  }
+
+  /**
+   * Creates a State with the same position.
+   * The new State has no previous states.
+   * A State holds every card in the hands, so a position with UNKNOWN cards in a hand, 
+   * such as a local state of an agent, cannot be converted until they are filled in, for example by a Determinizer.
+   * @param names the names of the players
+   * @return a State representing this position
+   * @throws IllegalStateException if any card in a hand is UNKNOWN
+   **/
+  public State toState(String[] names) throws IllegalStateException{
+    return toState(names, ActionTable.get(names));
+  }
+
+  //creates a State with the same position, using the ActionTable of the names given
+  State toState(String[] names, ActionTable actions) throws IllegalStateException{
+    int players = getNumPlayers();
+    Card[][] hands = new Card[players][getHandSize()];
+    for(int p = 0; p<players; p++)
+      for(int i = 0; i<hands[p].length; i++){
+        int id = getCard(p,i);
+        if(id==UNKNOWN) throw new IllegalStateException("Player "+p+" has an unknown card");
+        hands[p][i] = id==EMPTY?null:Card.get(id);
+      }
+    List<Card> discards = new ArrayList<Card>();
+    for(int i = 0; i<getDiscardSize(); i++) discards.add(Card.get(getDiscard(i)));
+    int[] heights = new int[5];
+    for(int c = 0; c<5; c++) heights[c] = data[FIREWORKS+c];
+    return new State(names, hands, discards, heights, getHintTokens(), getFuseTokens(),
+        getOrder(), data[NEXT]==-1?getOrder()%players:data[NEXT], getFinalActionIndex(), getObserver(), actions);
+  }
+
+  /**
+   * Creates a Deck containing the remaining cards, with the same order
+   * @return the remaining deck
+   * @throws IllegalStateException if any card in the deck is UNKNOWN
+   **/
+  public Deck toDeck() throws IllegalStateException{
+    Stack<Card> stack = new Stack<Card>();
+    for(int i = 0; i<getDeckSize(); i++){
+      if(data[DECK+i]==UNKNOWN) throw new IllegalStateException("Deck is unknown");
+      stack.push(Card.get(data[DECK+i]));
+    }
+    return new Deck(stack);
+  }
+
+  /**@return the number of players in the game**/
+  public int getNumPlayers(){return data[PLAYERS];}
+
+  /**@return the number of cards in each players hand**/
+  public int getHandSize(){return data[HAND_SIZE];}
+
+  /**@return the number of hint tokens available**/
+  public int getHintTokens(){return data[HINTS];}
+
+  /**@return the number of fuse tokens remaining**/
+  public int getFuseTokens(){return data[FUSE];}
+
+  /**@return the index of the next player, or -1 if the game is over**/
+  public int getNextPlayer(){return data[NEXT];}
+
+  /**@return the observer of the state, or -1 if there is no hidden hand**/
+  public int getObserver(){return data[OBSERVER];}
+
+  /**
+   * Sets the observer, for example to -1 once every UNKNOWN card has been filled in.
+   * @param observer the index of the observer, or -1 if there is no hidden hand
+   **/
+  public void setObserver(int observer){data[OBSERVER] = (byte)observer;}
+
+  /**@return the order of the state in the game**/
+  public int getOrder(){return getShort(ORDER);}
+
+  /**@return the order of the final action, or -1 if the deck is not empty**/
+  public int getFinalActionIndex(){return getShort(FINAL);}
+
+  /**@return the number of cards left in the deck**/
+  public int getDeckSize(){return data[DECK_SIZE];}
+
+  /**@return the number of cards discarded, or incorrectly played**/
+  public int getDiscardSize(){return data[DISCARD_SIZE];}
+
+  /**
+   * @param i the index of the discard, from 0 (the first discarded)
+   * @return the index of the ith discarded card
+   **/
+  public int getDiscard(int i){return data[DISCARDS+i];}
+
+  /**
+   * @param player the index of the player
+   * @param position the position of the card in the hand
+   * @return the index of the card, EMPTY or UNKNOWN
+   **/
+  public int getCard(int player, int position){return data[HANDS+5*player+position];}
+
+  /**
+   * Sets the card in a position, for example to fill in an unknown card.
+   * @param player the index of the player
+   * @param position the position of the card in the hand
+   * @param id the index of the card, EMPTY or UNKNOWN
+   **/
+  public void setCard(int player, int position, int id){data[HANDS+5*player+position] = (byte)id;}
+
+  /**
+   * @param depth the number of cards above it in the deck, so 0 is the next card drawn
+   * @return the index of the card, or UNKNOWN
+   **/
+  public int getDeckCard(int depth){return data[DECK+getDeckSize()-1-depth];}
+
+  /**
+   * Sets a card in the deck, for example to fill in an unknown card.
+   * @param depth the number of cards above it in the deck, so 0 is the next card drawn
+   * @param id the index of the card, or UNKNOWN
+   **/
+  public void setDeckCard(int depth, int id){data[DECK+getDeckSize()-1-depth] = (byte)id;}
+
+  /**
+   * @param colour the ordinal of the colour
+   * @return the number of cards played in the firework of that colour
+   **/
+  public int getFireworkHeight(int colour){return data[FIREWORKS+colour];}
+
+  /**@return the current score, the sum of the firework heights, or 0 if the fuse has run out**/
+  public int getScore(){return data[FUSE]==0?0:data[SCORE];}
+
+  /**@return true if all fireworks have been made, the final action has been made, or the fuse has run out**/
+  public boolean gameOver(){
+    int fin = getFinalActionIndex();
+    return (fin!=-1 && getOrder()==fin+1) || data[FUSE]==0 || data[SCORE]==25;
+  }
+
+  /**
+   * Gives the cards in a players hand that match a colour hint
+   * @param receiver the player receiving the hint
+   * @param colour the ordinal of the colour hinted
+   * @return a bitmask, where bit i is set if the card at position i has the colour
+   **/
+  public int colourMask(int receiver, int colour){
+    int mask = 0;
+    for(int i = 0; i<data[HAND_SIZE]; i++){
+      int id = data[HANDS+5*receiver+i];
+      if(id>=0 && id<UNKNOWN && id/5==colour) mask|=1<<i;
+    }
+    return mask;
+  }
+
+  /**
+   * Gives the cards in a players hand that match a value hint
+   * @param receiver the player receiving the hint
+   * @param value the value hinted, from 1 to 5
+   * @return a bitmask, where bit i is set if the card at position i has the value
+   **/
+  public int valueMask(int receiver, int value){
+    int mask = 0;
+    for(int i = 0; i<data[HAND_SIZE]; i++){
+      int id = data[HANDS+5*receiver+i];
+      if(id>=0 && id<UNKNOWN && id%5==value-1) mask|=1<<i;
+    }
+    return mask;
+  }
+
+  /**
+   * Tests whether the next player can play or discard the card in a position.
+   * @param position the position of the card
+   * @param discard true to test a discard, false to test a play
+   * @return true if the game is not over, the position holds a card, and (for a discard) a hint token is used
+   **/
+  public boolean legalCardAction(int position, boolean discard){
+    if(gameOver() || position<0 || position>=data[HAND_SIZE]) return false;
+    if(discard && data[HINTS]==8) return false;
+    return data[HANDS+5*data[NEXT]+position]!=EMPTY;
+  }
+
+  /**
+   * Tests whether the next player can give a hint to the receiver
+   * @param receiver the player receiving the hint
+   * @return true if the game is not over, there is a hint token, and the receiver is another player
+   **/
+  public boolean legalHint(int receiver){
+    return !gameOver() && data[HINTS]>0 && receiver>=0 && receiver<data[PLAYERS] && receiver!=data[NEXT];
+  }
+
+  /**
+   * Test the legality of an Action, with the same rules as State.legalAction.
+   * Hints must identify exactly the cards that match, so they cannot be checked against UNKNOWN cards.
+   * @param a the action to be tested
+   * @return true if the action is legal
+   * @throws IllegalActionException if the action is null, or is a discard when there are 8 hint tokens
+   **/
+  public boolean legalAction(Action a) throws IllegalActionException{
+    if(a==null) throw new IllegalActionException("Action is null");
+    if(a.getPlayer()!=data[NEXT] || gameOver()) return false;
+    switch(a.getType()){
+      case PLAY:
+        return legalCardAction(a.getCard(), false);
+      case DISCARD:
+        if(data[HINTS]==8) throw new IllegalActionException("Discards cannot be made when there are 8 hint tokens");
+        return legalCardAction(a.getCard(), true);
+      case HINT_COLOUR:
+        if(!legalHint(a.getHintReceiver())) return false;
+        return sameMask(a, colourMask(a.getHintReceiver(), a.getColour().ordinal()));
+      case HINT_VALUE:
+        if(!legalHint(a.getHintReceiver())) return false;
+        return sameMask(a, valueMask(a.getHintReceiver(), a.getValue()));
+      default: return false;
+    }
+  }
+
+  //true if the hinted cards match the bitmask for the hand
+  private boolean sameMask(Action a, int mask) throws IllegalActionException{
+    return a.getHandSize()==data[HAND_SIZE] && a.getHintMask()==mask;
+  }
+
+  /**
+   * Applies an action in place, with the same rules as State.nextState.
+   * @param a the action to apply
+   * @throws IllegalActionException if the action is not legal, or the card played is UNKNOWN
+   **/
+  public void apply(Action a) throws IllegalActionException{
+    if(!legalAction(a)) throw new IllegalActionException("Invalid action!: "+a);
+    switch(a.getType()){
+      case PLAY: play(a.getCard()); break;
+      case DISCARD: discard(a.getCard()); break;
+      default: hint();
+    }
+  }
+
+  /**
+   * The next player plays the card in the given position, and draws a replacement.
+   * Legality is not checked.
+   * @param position the position of the card played
+   * @throws IllegalActionException if the card played is UNKNOWN
+   **/
+  public void play(int position) throws IllegalActionException{
+    int slot = HANDS+5*data[NEXT]+position;
+    int id = data[slot];
+    if(id==UNKNOWN) throw new IllegalActionException("Card is unknown");
+    int entry = entry(slot);
+    int colour = id/5;
+    if(data[FIREWORKS+colour]==id%5){
+      data[FIREWORKS+colour]++;
+      data[SCORE]++;
+      if(data[FIREWORKS+colour]==5 && data[HINTS]<8) data[HINTS]++;
+      entry|=(colour+1)<<22;
+    }
+    else{
+      data[DISCARDS+data[DISCARD_SIZE]++] = (byte)id;
+      data[FUSE]--;
+      entry|=1<<25;
+    }
+    record(entry|draw(slot));
+    endTurn();
+  }
+
+  /**
+   * The next player discards the card in the given position, and draws a replacement.
+   * Legality is not checked.
+   * @param position the position of the card discarded
+   **/
+  public void discard(int position){
+    int slot = HANDS+5*data[NEXT]+position;
+    int entry = entry(slot)|1<<25;
+    data[DISCARDS+data[DISCARD_SIZE]++] = data[slot];
+    entry|=draw(slot);
+    if(data[HINTS]<8) data[HINTS]++;
+    record(entry);
+    endTurn();
+  }
+
+  /**
+   * The next player gives a hint.
+   * The content of a hint does not change the position, so legality is not checked.
+   **/
+  public void hint(){
+    record(entry(-1));
+    data[HINTS]--;
+    endTurn();
+  }
+
+  /**
+   * Reverses the last move applied, restoring the state exactly as it was before the move.
+   * @throws IllegalStateException if no move has been applied since the state was created or copied
+   **/
+  public void undo() throws IllegalStateException{
+    if(depth==0) throw new IllegalStateException("No move to undo");
+    int e = journal[--depth];
+    data[HINTS] = (byte)(e>>13&15);
+    data[FUSE] = (byte)(e>>17&3);
+    data[NEXT] = (byte)((e>>19&7)-1);
+    setShort(ORDER, getOrder()-1);
+    int colour = (e>>22&7)-1;
+    if(colour>=0){
+      data[FIREWORKS+colour]--;
+      data[SCORE]--;
+    }
+    if((e>>25&1)==1) data[DISCARD_SIZE]--;
+    if((e>>26&1)==1) data[DECK_SIZE]++;
+    if((e>>27&1)==1) setShort(FINAL, -1);
+    int slot = (e&31)-1;
+    if(slot>=0) data[HANDS+slot] = (byte)(e>>5);
+  }
+
+  /**@return the number of moves that can be undone**/
+  public int getUndoDepth(){return depth;}
+
+  //starts a journal entry: the hand slot (plus one, or 0 for a hint), the card in it, the tokens and the next player
+  private int entry(int slot){
+    int e = (data[HINTS]<<13)|(data[FUSE]<<17)|((data[NEXT]+1)<<19);
+    return slot==-1?e:e|(slot-HANDS+1)|((data[slot]&0xFF)<<5);
+  }
+
+  //adds an entry to the journal
+  private void record(int entry){
+    if(journal==null) journal = new int[64];
+    else if(depth==journal.length) journal = java.util.Arrays.copyOf(journal, 2*depth);
+    journal[depth++] = entry;
+  }
+
+  //replaces the card in the slot with the top of the deck, returning the journal flags for the draw
+  private int draw(int slot){
+    int flags = 0;
+    if(data[DECK_SIZE]>0){
+      data[slot] = data[DECK+--data[DECK_SIZE]];
+      flags|=1<<26;
+    }
+    else data[slot] = EMPTY;
+    if(data[DECK_SIZE]==0 && getFinalActionIndex()==-1){
+      setShort(FINAL, getOrder()+data[PLAYERS]);
+      flags|=1<<27;
+    }
+    return flags;
+  }
+
+  //advances the order and the next player
+  private void endTurn(){
+    setShort(ORDER, getOrder()+1);
+    data[NEXT] = (byte)((data[NEXT]+1)%data[PLAYERS]);
+    if(gameOver()) data[NEXT] = -1;
+  }
+
+  private int getShort(int offset){return (short)((data[offset]<<8)|(data[offset+1]&0xFF));}
+
+  private void setShort(int offset, int value){
+    data[offset] = (byte)(value>>8);
+    data[offset+1] = (byte)value;
+  }
+}
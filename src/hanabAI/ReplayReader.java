@@ -0,0 +1,144 @@
+package hanabAI;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reader for replay files written by ReplayWriter.
+ * The file is memory-mapped, and only the record lengths are read when it is opened,
+ * so individual fields of any game can be read directly from the mapping without decoding the whole record.
+ * Any state of a game can be rebuilt by replaying its moves through State.nextState.
+ * Files are limited to 2GB, the size of a single mapping.
+ **/
+public class ReplayReader{
+
+  private MappedByteBuffer buffer;
+  //the offset of each record (after its length), and of its deal
+  private int[] records;
+  private int[] deals;
+  private int games;
+
+  /**
+   * Opens and indexes a replay file
+   * @param file the name of the file
+   * @throws IOException if the file cannot be read, or is not a replay file
+   **/
+  public ReplayReader(String file) throws IOException{
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try{
+      FileChannel channel = raf.getChannel();
+      if(channel.size()>Integer.MAX_VALUE) throw new IOException("Replay files are limited to 2GB");
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally{raf.close();}
+    if(buffer.limit()<8 || buffer.getInt(0)!=ReplayWriter.MAGIC) throw new IOException("Not a replay file");
+    if(buffer.getInt(4)!=ReplayWriter.VERSION) throw new IOException("Unsupported replay version");
+    records = new int[1024];
+    deals = new int[1024];
+    int pos = 8;
+    while(pos+4<=buffer.limit()){
+      int length = buffer.getInt(pos);
+      if(pos+4+length>buffer.limit()) throw new IOException("Truncated replay file");
+      if(games==records.length){
+        records = java.util.Arrays.copyOf(records, 2*games);
+        deals = java.util.Arrays.copyOf(deals, 2*games);
+      }
+      int start = pos+4;
+      int deal = start+12;
+      for(int p = 0; p<buffer.get(start+8); p++) deal+=2+buffer.getShort(deal);
+      records[games] = start;
+      deals[games++] = deal;
+      pos = start+length;
+    }
+  }
+
+  /**@return the number of games in the file**/
+  public int getGameCount(){return games;}
+
+  /**
+   * @param game the index of the game in the file
+   * @return the identifier the game was recorded with, such as its seed
+   **/
+  public long getGameId(int game){return buffer.getLong(records[game]);}
+
+  /**
+   * @param game the index of the game in the file
+   * @return the number of players in the game
+   **/
+  public int getPlayers(int game){return buffer.get(records[game]+8);}
+
+  /**
+   * @param game the index of the game in the file
+   * @return the final score, or -1 if the game was abandoned
+   **/
+  public int getScore(int game){return buffer.get(records[game]+9);}
+
+  /**
+   * @param game the index of the game in the file
+   * @return the number of moves made in the game
+   **/
+  public int getMoveCount(int game){return buffer.getShort(records[game]+10)&0xFFFF;}
+
+  /**
+   * @param game the index of the game in the file
+   * @param turn the order of the state the move was made in
+   * @return the move, numbered by the ActionSpace for the number of players
+   **/
+  public int getMove(int game, int turn){return buffer.getShort(deals[game]+Deck.SIZE+2*turn)&0xFFFF;}
+
+  /**
+   * @param game the index of the game in the file
+   * @return the names of the players
+   **/
+  public String[] getNames(int game){
+    String[] names = new String[getPlayers(game)];
+    int pos = records[game]+12;
+    for(int p = 0; p<names.length; p++){
+      byte[] b = new byte[buffer.getShort(pos)];
+      for(int i = 0; i<b.length; i++) b[i] = buffer.get(pos+2+i);
+      names[p] = new String(b, StandardCharsets.UTF_8);
+      pos+=2+b.length;
+    }
+    return names;
+  }
+
+  /**
+   * @param game the index of the game in the file
+   * @return a new Deck, in the order it was before the deal
+   **/
+  public Deck getDeck(int game){
+    byte[] deal = new byte[Deck.SIZE];
+    for(int i = 0; i<Deck.SIZE; i++) deal[i] = buffer.get(deals[game]+i);
+    return new Deck(deal, 0);
+  }
+
+  /**
+   * Rebuilds a state of a game, by replaying its moves from the deal
+   * @param game the index of the game in the file
+   * @param turn the order of the state, from 0 to getMoveCount(game)
+   * @param history the history policy for the rebuilt states
+   * @return the global state of the game after the given number of moves
+   * @throws IllegalActionException if a recorded move is illegal, meaning the file is corrupt
+   **/
+  public State getState(int game, int turn, HistoryPolicy history) throws IllegalActionException{
+    if(turn<0 || turn>getMoveCount(game)) throw new ArrayIndexOutOfBoundsException("No state "+turn);
+    Deck deck = getDeck(game);
+    State s = new State(getNames(game), deck, history);
+    for(int t = 0; t<turn; t++) s = s.nextState(getMove(game,t), deck);
+    return s;
+  }
+
+  /**
+   * Rebuilds a state of a game, by replaying its moves from the deal, keeping no previous states
+   * @param game the index of the game in the file
+   * @param turn the order of the state, from 0 to getMoveCount(game)
+   * @return the global state of the game after the given number of moves
+   * @throws IllegalActionException if a recorded move is illegal, meaning the file is corrupt
+   **/
+  public State getState(int game, int turn) throws IllegalActionException{
+    return getState(game, turn, HistoryPolicy.LOG_ONLY);
+  }
+}
@@ -0,0 +1,151 @@
+package hanabAI;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A GameListener that records games in a compact binary replay format, read by ReplayReader.
+ * The file starts with the int MAGIC and the int VERSION, followed by one record for each game:
+ * <ul>
+ * <li>int: the number of bytes in the rest of the record</li>
+ * <li>long: the game identifier</li>
+ * <li>byte: the number of players</li>
+ * <li>byte: the final score, or -1 if the game was abandoned</li>
+ * <li>short: the number of moves</li>
+ * <li>for each player, a short length and the UTF-8 bytes of their name</li>
+ * <li>50 bytes: the deal, as card indexes in the order of a Deck (the last card is dealt first)</li>
+ * <li>2 bytes for each move, numbered by the ActionSpace for the number of players</li>
+ * </ul>
+ * The deal is recovered from the cards dealt and drawn, and any cards never drawn are stored in order of index.
+ * As with JsonLinesWriter, each game is collected for the thread playing it and written with one lock per game.
+ **/
+public class ReplayWriter implements GameListener{
+
+  /**The first int of a replay file**/
+  public static final int MAGIC = 0x484E4252;
+  /**The version of the format**/
+  public static final int VERSION = 1;
+
+  private DataOutputStream out;
+  private IOException error;
+  private ThreadLocal<Record> records = new ThreadLocal<Record>(){
+    protected Record initialValue(){return new Record();}
+  };
+
+  //the game currently being recorded by a thread
+  private static class Record{
+    byte[] dealt = new byte[Deck.SIZE];//cards in the order they were dealt or drawn
+    int count;
+    short[] moves = new short[128];
+    int moveCount;
+  }
+
+  /**
+   * Creates a writer for a stream, and writes the file header
+   * @param out the stream the games are written to
+   * @throws IOException if the header cannot be written
+   **/
+  public ReplayWriter(OutputStream out) throws IOException{
+    this.out = new DataOutputStream(new BufferedOutputStream(out, 1<<16));
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(VERSION);
+  }
+
+  /**
+   * Creates a writer for a file, and writes the file header
+   * @param file the name of the file, which is replaced if it exists
+   * @throws IOException if the file cannot be opened
+   **/
+  public ReplayWriter(String file) throws IOException{
+    this(new FileOutputStream(file));
+  }
+
+  /**
+   * Records the cards dealt.
+   **/
+  public void gameStarted(long game, State initial){
+    Record r = records.get();
+    r.count = 0;
+    r.moveCount = 0;
+    int players = initial.getPlayerCount();
+    int handSize = players>3?4:5;
+    for(int p = 0; p<players; p++)
+      for(int i = 0; i<handSize; i++) r.dealt[r.count++] = (byte)initial.card(p,i).getIndex();
+  }
+
+  /**
+   * Records the move, and the card drawn.
+   **/
+  public void actionPerformed(long game, State before, Action action, State after){
+    Record r = records.get();
+    try{
+      if(r.moveCount==r.moves.length) r.moves = java.util.Arrays.copyOf(r.moves, 2*r.moveCount);
+      r.moves[r.moveCount++] = (short)before.getActionTable().getMove(action);
+      if(action.getType()==ActionType.PLAY || action.getType()==ActionType.DISCARD){
+        Card c = after.card(action.getPlayer(), action.getCard());
+        if(c!=null) r.dealt[r.count++] = (byte)c.getIndex();
+      }
+    }
+    catch(IllegalActionException e){//cannot occur, as the action was legal
+      e.printStackTrace();
+      throw new RuntimeException("Could not record the move: "+action);
+    }
+  }
+
+  /**
+   * Writes the record of the game.
+   **/
+  public void gameEnded(long game, State last, int score){
+    Record r = records.get();
+    //complete the deal with the cards that were never drawn
+    int[] left = new int[Card.IDENTITIES];
+    for(int i = 0; i<Card.IDENTITIES; i++) left[i] = Card.count(i);
+    for(int i = 0; i<r.count; i++) left[r.dealt[i]]--;
+    for(int i = 0; i<Card.IDENTITIES; i++)
+      while(left[i]-->0) r.dealt[r.count++] = (byte)i;
+    int players = last.getPlayerCount();
+    byte[][] utf = new byte[players][];
+    int length = 8+1+1+2+Deck.SIZE+2*r.moveCount;
+    for(int p = 0; p<players; p++){
+      utf[p] = last.getName(p).getBytes(StandardCharsets.UTF_8);
+      length+=2+utf[p].length;
+    }
+    synchronized(this){
+      if(error!=null) return;
+      try{
+        out.writeInt(length);
+        out.writeLong(game);
+        out.writeByte(players);
+        out.writeByte(score);
+        out.writeShort(r.moveCount);
+        for(byte[] b: utf){
+          out.writeShort(b.length);
+          out.write(b);
+        }
+        for(int i = Deck.SIZE-1; i>=0; i--) out.writeByte(r.dealt[i]);
+        for(int i = 0; i<r.moveCount; i++) out.writeShort(r.moves[i]);
+      }
+      catch(IOException e){error = e;}
+    }
+  }
+
+  /**
+   * Tests whether an error has occurred writing the output
+   * @return the first error, or null if there has been none
+   **/
+  public synchronized IOException checkError(){return error;}
+
+  /**
+   * Writes any buffered output, and closes the stream.
+   * @throws IOException if an error occurred at any time writing the output
+   **/
+  public synchronized void close() throws IOException{
+    try{out.close();}
+    catch(IOException e){if(error==null) error = e;}
+    if(error!=null) throw error;
+  }
+}
@@ -0,0 +1,114 @@
+package hanabAI;
+
+/**
+ * A class for accumulating the scores of a set of games.
+ * Each worker in a tournament keeps its own ScoreStats, 
+ * and the results are combined with merge, so no locking is required.
+ **/
+public class ScoreStats{
+
+  /**The number of games recorded**/
+  private long games;
+  /**The sum of the scores**/
+  private long sum;
+  /**The sum of the squared scores**/
+  private long sumSquares;
+  /**The number of games for each score from 0 to 25**/
+  private long[] histogram = new long[26];
+  /**The number of games lost by exhausting the fuse**/
+  private long busts;
+  /**The number of games abandoned due to an illegal action**/
+  private long failures;
+  /**The decision times of the agents in the games**/
+  private LatencyRecorder latencies = new LatencyRecorder();
+
+  /**
+   * Records the result of a game.
+   * @param score the score of the game, or -1 if the game was abandoned
+   * @param bust true if the game ended because the fuse ran out
+   **/
+  public void add(int score, boolean bust){
+    if(score<0 || score>25){failures++; return;}
+    games++;
+    sum+=score;
+    sumSquares+=score*score;
+    histogram[score]++;
+    if(bust) busts++;
+  }
+
+  /**
+   * Adds all the results recorded in another ScoreStats to this one.
+   * @param other the results to add
+   * @return this ScoreStats, to allow chaining
+   **/
+  public ScoreStats merge(ScoreStats other){
+    games+=other.games;
+    sum+=other.sum;
+    sumSquares+=other.sumSquares;
+    for(int i = 0; i<histogram.length; i++) histogram[i]+=other.histogram[i];
+    busts+=other.busts;
+    failures+=other.failures;
+    latencies.merge(other.latencies);
+    return this;
+  }
+
+  /**
+   * Gets the decision times of the agents, for games that recorded them
+   * @return the recorder of decision times, by agent and number of players
+   **/
+  public LatencyRecorder getLatencies(){return latencies;}
+
+  /**
+   * Gets the number of completed games
+   * @return the number of games with a valid score
+   **/
+  public long getGames(){return games;}
+
+  /**
+   * Gets the number of abandoned games
+   * @return the number of games that ended with an illegal action
+   **/
+  public long getFailures(){return failures;}
+
+  /**
+   * Gets the mean score
+   * @return the mean score of the completed games, or 0 if there are none
+   **/
+  public double getMean(){return games==0?0:(double)sum/games;}
+
+  /**
+   * Gets the standard deviation of the scores
+   * @return the sample standard deviation of the completed games, or 0 if there are fewer than two
+   **/
+  public double getStdDev(){
+    if(games<2) return 0;
+    double mean = getMean();
+    return Math.sqrt(Math.max(0,(sumSquares-games*mean*mean)/(games-1)));
+  }
+
+  /**
+   * Gets the proportion of games lost by exhausting the fuse
+   * @return the bust rate, between 0 and 1
+   **/
+  public double getBustRate(){return games==0?0:(double)busts/games;}
+
+  /**
+   * Gets the histogram of scores
+   * @return an array of length 26, where the ith entry is the number of games with score i
+   **/
+  public long[] getHistogram(){return histogram.clone();}
+
+  /**
+   * A summary of the results
+   * @return a String describing the mean, deviation, bust rate and score histogram
+   **/
+  public String toString(){
+    StringBuilder sb = new StringBuilder();
+    sb.append("Games: ").append(games);
+    if(failures>0) sb.append(" (").append(failures).append(" abandoned)");
+    sb.append(String.format("\nMean: %.3f\nStdDev: %.3f\nBust rate: %.4f\n", getMean(), getStdDev(), getBustRate()));
+    for(int i = 0; i<histogram.length; i++)
+      if(histogram[i]>0) sb.append(i).append(": ").append(histogram[i]).append('\n');
+    return sb.toString();
+  }
+}
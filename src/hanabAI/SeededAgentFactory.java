@@ -0,0 +1,18 @@
+package hanabAI;
+
+/**
+ * A factory for agents whose random choices can be fixed by a seed.
+ * Comparison gives the agents of two builds the same seeds on the same deal,
+ * so their scores differ only through the decisions the builds make.
+ * Implementations must be safe to call from several threads at once.
+ * */
+public interface SeededAgentFactory extends AgentFactory{
+
+  /**
+   * Creates a new agent, ready to play its first game, with its random number generator seeded
+   * @param seed the seed of the agent's random number generator
+   * @return a new agent instance
+   * */
+  public Agent newAgent(long seed);
+
+}
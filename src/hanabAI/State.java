@@ -3,6 +3,8 @@ import java.util.*;
 /**
  * Represent the game state in Hanabi.
  * The state is designed as an immutable object.
+ * Successive states share the hands, discards and fireworks that a move does not change, 
+ * so a hint copies no cards at all.
  * Agents are able to get the current game state, 
  * and all previous moves using a state object.
  * @author Tim French
@@ -15,10 +17,22 @@ public class State implements Cloneable{
   private String[] players;
   /**The stack of cards that have bee discarded, or incorrectly played**/
   private Stack<Card> discards;
-  /**For each colour, the cards making up that firework so far**/
-  private Map<Colour,Stack<Card>> fireworks;
+  /**The number of discarded cards of each identity, indexed by Card.getIndex**/
+  private byte[] discarded;
+  /**For each colour (by ordinal), the number of cards in that firework so far**/
+  private byte[] fireworks;
+  /**The total number of cards in the fireworks**/
+  private int played=0;
+  /**The number of fireworks with all 5 cards**/
+  private int completed=0;
+  /**Whether the game is over**/
+  private boolean over=false;
   /**The hand of each player**/
   private Card[][] hands;
+  /**The number of cards of each identity in the players hands, indexed by Card.getIndex**/
+  private byte[] held;
+  /**The number of cards of each identity in the hands the observer can see (the same array as held for a global state)**/
+  private byte[] visible;
   /**The order of this state in the game**/
   private int order=0;
   /**The number of hints remaining**/
@@ -29,34 +43,109 @@ public class State implements Cloneable{
   private int observer=-1;
   /**The previous State of the game, so that all states are accessible back to the first state (with a null previous state)**/
   private State previousState;
+  /**The number of previous states reachable through previousState**/
+  private int kept;
   /**A list of all moves made so far in the game, in the order they were played**/
   private Action previousAction;
   /**The index of the next player to move**/
   private int nextPlayer=-1;
   /**The fnal play of the game (for when the deck runs out)**/
   private int finalAction=-1;
+  /**The actions made in this game, shared by all states of the game**/
+  private ActionLog log;
+  /**The number of previous states kept by each state of this game**/
+  private HistoryPolicy history;
+  /**The shared actions of the players in this game**/
+  private ActionTable actions;
+  /**For each player, the bitmask of the cards matching each hint: 5 colours then values 1 to 5**/
+  private int[] hintMasks;
+  /**The Zobrist key of the position, without the turns left (see getKey)**/
+  private long key;
 
   /**A constructor for the first state in the game
    * @param players the names of the players in the game, in an array by index
-   * @param deck the shuffled deck of cards to be used for the deal
+   * @param deck the shuffled deck of cards to be used for the deal. The cards dealt are popped from the stack.
    * @throws IllegalArgumentException if arguments are null, or the wrong size**/
   public State(String[] players, Stack<Card> deck) throws IllegalArgumentException{
-    if(players==null || players.length<2 || players.length >5 || deck == null || deck.size() !=50)
+    this(players, deck==null?null:new Deck(deck));
+    int dealt = players.length*hands[0].length;
+    for(int i = 0; i<dealt; i++) deck.pop();
+  }
+
+  /**A constructor for the first state in the game
+   * @param players the names of the players in the game, in an array by index
+   * @param deck the shuffled deck of cards to be used for the deal
+   * @throws IllegalArgumentException if arguments are null, or the wrong size**/
+  public State(String[] players, Deck deck) throws IllegalArgumentException{
+    this(players, deck, HistoryPolicy.FULL);
+  }
+
+  /**A constructor for the first state in the game
+   * @param players the names of the players in the game, in an array by index
+   * @param deck the shuffled deck of cards to be used for the deal
+   * @param history the policy for how many previous states each state of the game keeps
+   * @throws IllegalArgumentException if arguments are null, or the wrong size**/
+  public State(String[] players, Deck deck, HistoryPolicy history) throws IllegalArgumentException{
+    if(history==null || players==null || players.length<2 || players.length >5 || deck == null || deck.size() !=50)
       throw new IllegalArgumentException("incorrect parameters");
     this.players = players.clone();
     discards = new Stack<Card>();
-    fireworks = new HashMap<Colour,Stack<Card>>();
-    for(Colour c: Colour.values())fireworks.put(c,new Stack<Card>());
+    discarded = new byte[Card.IDENTITIES];
+    fireworks = new byte[5];
     hands = new Card[players.length][players.length>3?4:5];
     for(int i = 0; i<hands.length; i++)
       for(int j = 0; j<hands[i].length; j++) 
         hands[i][j]=deck.pop();
+    initCounts();
     order = 0;
     hints = 8;
     fuse = 3;
     observer = -1;  
     nextPlayer = 0;
     finalAction = -1;
+    initKey();
+    this.history = history;
+    log = new ActionLog(this);
+    actions = ActionTable.get(this.players);
+    initHintMasks();
+  }
+
+  /**A constructor for a state in the middle of a game, with no previous states.
+   * Used to rebuild a State from a compact representation.
+   * @param players the names of the players in the game
+   * @param hands the hand of each player, with null for empty or unknown cards
+   * @param discards the discarded cards, in the order they were discarded
+   * @param heights the number of cards in each firework, indexed by colour ordinal
+   * @param actions the ActionTable for the players, so rebuilding a state does not look it up
+   **/
+  State(String[] players, Card[][] hands, List<Card> discards, int[] heights, 
+      int hints, int fuse, int order, int nextPlayer, int finalAction, int observer, ActionTable actions){
+    this.players = players.clone();
+    this.hands = hands;
+    this.discards = new Stack<Card>();
+    this.discards.addAll(discards);
+    discarded = new byte[Card.IDENTITIES];
+    for(Card c: discards) discarded[c.getIndex()]++;
+    fireworks = new byte[5];
+    for(int c = 0; c<5; c++){
+      fireworks[c] = (byte)heights[c];
+      played+=heights[c];
+      if(heights[c]==5) completed++;
+    }
+    this.hints = hints;
+    this.fuse = fuse;
+    this.order = order;
+    this.nextPlayer = nextPlayer;
+    this.finalAction = finalAction;
+    initCounts();
+    this.observer = -1;
+    initKey();
+    setObserver(observer);
+    over = (finalAction!=-1 && order==finalAction+1) || fuse==0 || played==25;
+    history = HistoryPolicy.FULL;
+    log = new ActionLog(this);
+    this.actions = actions;
+    initHintMasks();
   }
 
   /**
@@ -67,32 +156,66 @@ public class State implements Cloneable{
    *@throws IllegalActionException if the move is not legal in the current state, or one hand has been hidden.
    **/
   public State nextState(Action action, Stack<Card> deck) throws IllegalActionException{
+   checkTransition(action);
+   Card drawn = (draws(action) && !deck.isEmpty())?deck.pop():null;
+   return transition(action, drawn, deck.isEmpty());
+  }
+
+  /**
+   *A method to create the next state from the given state and a move.
+   *This method will only work if no hand has been hidden (since it allows agents to infer the result of actions).
+   *@param deck the deck of cards
+   *@param action the action made
+   *@throws IllegalActionException if the move is not legal in the current state, or one hand has been hidden.
+   **/
+  public State nextState(Action action, Deck deck) throws IllegalActionException{
+   checkTransition(action);
+   Card drawn = (draws(action) && !deck.isEmpty())?deck.pop():null;
+   return transition(action, drawn, deck.isEmpty());
+  }
+
+  //throws an exception if the action cannot be applied to this state
+  private void checkTransition(Action action) throws IllegalActionException{
    if(!legalAction(action)) throw new IllegalActionException("Invalid action!: "+action);
    if(gameOver()) throw new IllegalActionException("Game Over!");
    if(observer!=-1) throw new IllegalActionException("Next state unavailable!");
-   State s = (State)this.clone();
+  }
+
+  //true if the action draws a card from the deck
+  private static boolean draws(Action action){
+   return action.getType()==ActionType.PLAY || action.getType()==ActionType.DISCARD;
+  }
+
+  //creates the next state, given the card drawn (or null) and whether the deck is now empty
+  //the new state shares every container it does not change with this state
+  private State transition(Action action, Card drawn, boolean deckEmpty) throws IllegalActionException{
+   State s = share();
    switch(action.getType()){
      case PLAY:
        Card c = hands[action.getPlayer()][action.getCard()];
-       Stack<Card> fw = fireworks.get(c.getColour());
-       if((fw.isEmpty() && c.getValue() == 1) || (!fw.isEmpty() && fw.peek().getValue()==c.getValue()-1)){
-         s.fireworks.get(c.getColour()).push(c);
-         if(s.fireworks.get(c.getColour()).size()==5 && s.hints<8) s.hints++;
+       int colour = c.getColour().ordinal();
+       if(fireworks[colour]==c.getValue()-1){
+         s.fireworks = fireworks.clone();
+         s.fireworks[colour]++;
+         s.key^=Zobrist.FIREWORK[6*colour+fireworks[colour]]^Zobrist.FIREWORK[6*colour+fireworks[colour]+1];
+         s.played++;
+         if(c.getValue()==5){
+           s.completed++;
+           if(s.hints<8) s.hints++;
+         }
        }
        else{
-         s.discards.push(c);
+         s.discard(c);
          s.fuse--;
        }
-       if(!deck.isEmpty()) s.hands[action.getPlayer()][action.getCard()] = deck.pop();
-       else s.hands[action.getPlayer()][action.getCard()] = null;
-       if(deck.isEmpty() && finalAction==-1) s.finalAction = order+players.length;
+       s.replaceCard(action.getPlayer(), action.getCard(), drawn);
+       if(deckEmpty && finalAction==-1) s.finalAction = order+players.length;
        break;  
      case DISCARD:
        c = hands[action.getPlayer()][action.getCard()];
-       s.discards.push(c);
-       if(!deck.isEmpty()) s.hands[action.getPlayer()][action.getCard()] = deck.pop();
-       else s.hands[action.getPlayer()][action.getCard()] = null;
-       if(deck.isEmpty() && finalAction==-1) s.finalAction = order+players.length;
+       s.discard(c);
+       s.replaceCard(action.getPlayer(), action.getCard(), drawn);
+       if(deckEmpty && finalAction==-1) s.finalAction = order+players.length;
        if(hints<8) s.hints++;
        break;
      case HINT_COLOUR: 
@@ -105,11 +228,59 @@ public class State implements Cloneable{
    }
    s.order++;
    s.previousAction = action;
+   s.log = log.append(order, action, drawn, deckEmpty);
    s.nextPlayer = (nextPlayer+1)%players.length; 
-   s.previousState = this;  
+   s.over = (s.finalAction!=-1 && s.order==s.finalAction+1) || s.fuse==0 || s.played==25;
+   s.key^=Zobrist.HINTS[hints]^Zobrist.HINTS[s.hints]^Zobrist.FUSE[fuse]^Zobrist.FUSE[s.fuse]
+     ^Zobrist.NEXT[nextPlayer]^Zobrist.NEXT[s.nextPlayer];
+   s.link(this);
    return s;
   }
 
+  //links a new state to its previous state, keeping the number of previous states given by the history policy.
+  //states already created are never changed: once the chain reaches twice the depth, 
+  //the new state links to a copy of the last depth states instead, so the cost of copying is constant per move
+  private void link(State p){
+    int depth = history.getDepth();
+    if(depth==0){
+      previousState = null;
+      kept = 0;
+      return;
+    }
+    previousState = (depth==Integer.MAX_VALUE || p.kept+1L<2L*depth)?p:p.limit(depth-1);
+    kept = previousState.kept+1;
+  }
+
+  //gives this state, or a copy keeping only k previous states, made of copies of those states
+  private State limit(int k){
+    if(kept<=k) return this;
+    State head = share(), c = head;
+    for(int j = k; j>0; j--){
+      c.kept = j;
+      c.previousState = c.previousState.share();
+      c = c.previousState;
+    }
+    c.kept = 0;
+    c.previousState = null;
+    return head;
+  }
+
+  //gives the previous state, rebuilding it from the action log if it has not been kept.
+  //rebuilds start from the nearest checkpoint the log keeps, so walking back through a game is linear
+  private State previous(){
+    State s = previousState;
+    if(s!=null || order<=log.getStart()) return s;
+    try{
+      s = log.getCheckpoint(order-1);
+      for(int t = s.order; t<order-1; t++){
+        s = s.transition(log.get(t), log.getDraw(t), log.isDeckEmpty(t));
+        log.putCheckpoint(s);
+      }
+    }
+    catch(IllegalActionException e){return null;}//cannot occur, as the actions were legal
+    return s;
+  }
+
   /**
    *A method to create a local state from a global state. 
    *That is, if there is no current observer, the specified observer will have their hand hidden from them.
@@ -118,8 +289,8 @@ public class State implements Cloneable{
    **/
   public State hideHand(int observer) throws IllegalActionException{
     if(this.observer==-1 && observer>=0 && observer < hands.length){
-      State local = (State) this.clone();
-      local.observer=observer;
+      State local = share();
+      local.setObserver(observer);
       return local;
     }
     else throw new IllegalActionException("Hand already hidden, or observer out of bounds");
@@ -143,27 +314,151 @@ public class State implements Cloneable{
         if(hints==8) throw new IllegalActionException("Discards cannot be made when there are 8 hint tokens");
         return (a.getCard()>=0 && a.getCard()<hands[nextPlayer].length);
       case HINT_COLOUR:
-        if(hints==0 || a.getHintReceiver() <0 || a.getHintReceiver()>players.length || a.getHintReceiver() == a.getPlayer()) return false; 
-        boolean[] hint = new boolean[hands[a.getHintReceiver()].length];
-        for(int i = 0; i<hint.length; i++){
-          Card c = hands[a.getHintReceiver()][i];
-          hint[i] = (c==null?null:c.getColour())==a.getColour();
-        }
-        return Arrays.equals(hint, a.getHintedCards());
+        if(hints==0 || a.getHintReceiver() <0 || a.getHintReceiver()>=players.length || a.getHintReceiver() == a.getPlayer()) return false; 
+        return sameMask(a, a.getHintReceiver(), hintMasks[10*a.getHintReceiver()+a.getColour().ordinal()]);
       case HINT_VALUE:
-        if(hints==0 || a.getHintReceiver() <0 || a.getHintReceiver()>players.length || a.getHintReceiver() == a.getPlayer()) return false; 
-        hint = new boolean[hands[a.getHintReceiver()].length];
-        for(int i = 0; i<hint.length; i++){
-          Card c = hands[a.getHintReceiver()][i];
-          hint[i] = (c==null?-1:c.getValue())==a.getValue();
-        }
-        return Arrays.equals(hint, a.getHintedCards());
+        if(hints==0 || a.getHintReceiver() <0 || a.getHintReceiver()>=players.length || a.getHintReceiver() == a.getPlayer()) return false; 
+        int v = a.getValue();
+        return sameMask(a, a.getHintReceiver(), (v<1 || v>5)?0:hintMasks[10*a.getHintReceiver()+4+v]);
       default: return false;
     }
   }
   
+  //true if the hinted cards match the bitmask for the receivers hand
+  private boolean sameMask(Action a, int receiver, int mask) throws IllegalActionException{
+    return a.getHandSize()==hands[receiver].length && a.getHintMask()==mask;
+  }
+
+  /**
+   * Gives the cards in a players hand that would be indicated by a colour hint.
+   * @param receiver the player receiving the hint
+   * @param c the colour hinted
+   * @return a bitmask, where bit i is set if the card at position i has the colour
+   * @throws IllegalActionException if the receiver is the observer, whose hand is hidden
+   **/
+  public int getHintMask(int receiver, Colour c) throws IllegalActionException{
+    if(receiver==observer) throw new IllegalActionException("Hand is hidden");
+    return hintMasks[10*receiver+c.ordinal()];
+  }
+
+  /**
+   * Gives the cards in a players hand that would be indicated by a value hint.
+   * @param receiver the player receiving the hint
+   * @param value the value hinted, from 1 to 5
+   * @return a bitmask, where bit i is set if the card at position i has the value
+   * @throws IllegalActionException if the receiver is the observer, whose hand is hidden
+   **/
+  public int getHintMask(int receiver, int value) throws IllegalActionException{
+    if(receiver==observer) throw new IllegalActionException("Hand is hidden");
+    if(value<1 || value>5) return 0;
+    return hintMasks[10*receiver+4+value];
+  }
+
+  /**
+   * Gives the numbering of actions for this game.
+   * @return the ActionSpace for the number of players in this game
+   **/
+  public ActionSpace getActionSpace(){return ActionSpace.get(players.length);}
+
+  /**
+   * Writes every legal move for the next player into a buffer, as moves of the ActionSpace.
+   * Plays and discards of empty positions, and hints that indicate no cards, are not included.
+   * The order is plays, then discards, then hints.
+   * @param buffer an array with at least getActionSpace().maxLegalMoves() entries
+   * @return the number of moves written
+   * @throws IllegalActionException if this is a local state, and the observer is not the next player
+   **/
+  public int getLegalMoves(int[] buffer) throws IllegalActionException{
+    if(observer!=-1 && observer!=nextPlayer) throw new IllegalActionException("Local states may only list the observers moves");
+    if(gameOver()) return 0;
+    ActionSpace space = getActionSpace();
+    Card[] hand = hands[nextPlayer];
+    int count = 0;
+    for(int i = 0; i<hand.length; i++) 
+      if(hand[i]!=null) buffer[count++] = space.play(nextPlayer,i);
+    if(hints<8)
+      for(int i = 0; i<hand.length; i++) 
+        if(hand[i]!=null) buffer[count++] = space.discard(nextPlayer,i);
+    if(hints>0)
+      for(int r = 1; r<players.length; r++){
+        int receiver = (nextPlayer+r)%players.length;
+        for(int k = 0; k<10; k++){
+          int mask = hintMasks[10*receiver+k];
+          if(mask==0) continue;
+          buffer[count++] = (k<5?space.colourHint(nextPlayer, receiver, Colour.values()[k], mask)
+              :space.valueHint(nextPlayer, receiver, k-4, mask));
+        }
+      }
+    return count;
+  }
+
+  /**
+   * Counts the legal moves for the next player, as listed by getLegalMoves
+   * @return the number of legal moves
+   * @throws IllegalActionException if this is a local state, and the observer is not the next player
+   **/
+  public int getLegalMoveCount() throws IllegalActionException{
+    return getLegalMove(-1);
+  }
+
+  /**
+   * Gives a legal move of the next player by index, in the order of getLegalMoves, without a buffer.
+   * @param index the index of the move, from 0 to getLegalMoveCount()-1
+   * @return the move, or if index is out of range, the number of legal moves
+   * @throws IllegalActionException if this is a local state, and the observer is not the next player
+   **/
+  public int getLegalMove(int index) throws IllegalActionException{
+    if(observer!=-1 && observer!=nextPlayer) throw new IllegalActionException("Local states may only list the observers moves");
+    if(gameOver()) return 0;
+    ActionSpace space = getActionSpace();
+    Card[] hand = hands[nextPlayer];
+    int count = 0;
+    for(int i = 0; i<hand.length; i++) 
+      if(hand[i]!=null && count++==index) return space.play(nextPlayer,i);
+    if(hints<8)
+      for(int i = 0; i<hand.length; i++) 
+        if(hand[i]!=null && count++==index) return space.discard(nextPlayer,i);
+    if(hints>0)
+      for(int r = 1; r<players.length; r++){
+        int receiver = (nextPlayer+r)%players.length;
+        for(int k = 0; k<10; k++){
+          int mask = hintMasks[10*receiver+k];
+          if(mask==0 || count++!=index) continue;
+          return (k<5?space.colourHint(nextPlayer, receiver, Colour.values()[k], mask)
+              :space.valueHint(nextPlayer, receiver, k-4, mask));
+        }
+      }
+    return count;
+  }
+
+  /**
+   * Creates the Action for a move of this game
+   * @param move a move of the ActionSpace for this game
+   * @return the action, with the name of the player making it
+   **/
+  public Action getAction(int move){
+    return actions.get(move);
+  }
+
+  /**
+   * Gives the table of shared Action objects for this game
+   * @return the ActionTable for the players of this game
+   **/
+  public ActionTable getActionTable(){return actions;}
+
+  /**
+   *A method to create the next state from the given state and a move of the ActionSpace.
+   *@param move the move made
+   *@param deck the deck of cards
+   *@throws IllegalActionException if the move is not legal in the current state, or one hand has been hidden.
+   **/
+  public State nextState(int move, Deck deck) throws IllegalActionException{
+    return nextState(actions.get(move), deck);
+  }
+
   /**
    * Gives and array of all the player names in the game.
+   * The array is a copy, so getPlayerCount, getName or getPlayerNames should be used where a copy is not needed.
    * @return an array containing the naems of the players in the game, by ther index in the game.
    **/
   public String[] getPlayers(){
@@ -171,7 +466,8 @@ public class State implements Cloneable{
   } 
   
   /**
-   * Gives the cards of the specified player
+   * Gives the cards of the specified player.
+   * The array is a copy, so getCard or getHandView should be used where a copy is not needed.
    * @param player the index of the player is the game
    * @return an array of cards in player's hand, or an empty array, if the cards are hidden.
    * @throws ArrayIndexOutOfBounds if there is no player of the given index.
@@ -182,6 +478,76 @@ public class State implements Cloneable{
     return hands[player].clone();
   }
 
+  /**
+   * Gives the number of players, without copying their names.
+   * @return the number of players in the game
+   **/
+  public int getPlayerCount(){return players.length;}
+
+  /**
+   * Gives a read only view of the player names, without copying them.
+   * @return an unmodifiable list of the names of the players in the game, by their index in the game
+   **/
+  public List<String> getPlayerNames(){
+    return Collections.unmodifiableList(Arrays.asList(players));
+  }
+
+  /**
+   * Gives the number of cards the specified player holds, including empty positions.
+   * @param player the index of the player in the game
+   * @return the size of the players hand
+   * @throws ArrayIndexOutOfBoundsException if there is no player of the given index.
+   **/
+  public int getHandSize(int player)throws ArrayIndexOutOfBoundsException{return hands[player].length;}
+
+  /**
+   * Gives a card in the specified players hand, without copying the hand.
+   * @param player the index of the player in the game
+   * @param position the position of the card in the hand
+   * @return the card in that position, or null if the position is empty, or the card is hidden from the observer
+   * @throws ArrayIndexOutOfBoundsException if there is no player or position of the given index.
+   **/
+  public Card getCard(int player, int position)throws ArrayIndexOutOfBoundsException{
+    Card c = hands[player][position];
+    return player==observer?null:c;
+  }
+
+  /**
+   * Gives a read only view of the specified players hand, without copying it.
+   * @param player the index of the player in the game
+   * @return an unmodifiable list of the cards in the players hand, with null for empty positions, or only nulls if the cards are hidden.
+   * @throws ArrayIndexOutOfBoundsException if there is no player of the given index.
+   **/
+  public List<Card> getHandView(int player)throws ArrayIndexOutOfBoundsException{
+    if(player==observer) return Collections.nCopies(hands[player].length, (Card)null);
+    return Collections.unmodifiableList(Arrays.asList(hands[player]));
+  }
+
+  /**
+   * Gives a card without copying the hand, ignoring the observer.
+   * @return the card in the given position, or null if it is empty
+   **/
+  Card card(int player, int position){return hands[player][position];}
+
+  /**
+   * Tests whether a player holds a card in the given position, without revealing it
+   * @return true if the position is not empty
+   **/
+  boolean hasCard(int player, int position){return hands[player][position]!=null;}
+
+  /**
+   * Tests whether a card was drawn after an earlier action, without revealing it
+   * @param turn the order of the state in which the action was performed, from getLogStart() to getOrder()-1
+   * @return true if a card was drawn to replace the card played or discarded
+   **/
+  boolean drewCard(int turn){return log.getDraw(turn)!=null;}
+
+  /**@return the order of the first state whose action is recorded, which is 0 unless the state was rebuilt mid game**/
+  int getLogStart(){return log.getStart();}
+
+  /**@return the state before the first action recorded**/
+  State getLogRoot(){return log.getRoot();}
+
   /**
    * Gives a players name
    * @return the name of the specified player
@@ -190,11 +556,15 @@ public class State implements Cloneable{
 
   /**
    * Gives the previous state of the game, allowing agents to determine the recent actions in the game.
+   * If the history policy of the game did not keep the previous state, it is rebuilt from the first state of the game.
    * @return the previous state, with the same observer as the current state.
    **/
   public State getPreviousState(){
-    State s = previousState;
-    if(s!=null) s.observer = observer;
+    State s = previous();
+    if(s!=null && s.observer!=observer){
+      s = s.share();
+      s.setObserver(observer);
+    }
     return s;
   }
 
@@ -211,11 +581,33 @@ public class State implements Cloneable{
    * @throws ArrayIndexOUtOfBoundsException if the specified player has not yet performed an action
    **/
   public Action getPreviousAction(int player){
-    State s = this;
-    while(s!=null && s.previousAction !=null && s.previousAction.getPlayer()!=player)
-      s = s.previousState;
-    if(s==null || s.previousAction==null) throw new ArrayIndexOutOfBoundsException("Player has not played yet");
-    else return s.previousAction;
+    int turn = getLastTurn(player);
+    if(turn==-1) throw new ArrayIndexOutOfBoundsException("Player has not played yet");
+    return log.get(turn);
+  }
+
+  /**
+   * Gets the action performed in an earlier state of the game, in constant time.
+   * @param turn the order of the state in which the action was performed, less than the order of this state
+   * @return the action performed in the state with the given order
+   * @throws ArrayIndexOutOfBoundsException if turn is not less than the order of this state, 
+   * or the state was created without a history
+   **/
+  public Action getHistoryAction(int turn) throws ArrayIndexOutOfBoundsException{
+    if(turn<0 || turn>=order) throw new ArrayIndexOutOfBoundsException("No action at turn "+turn);
+    return log.get(turn);
+  }
+
+  /**
+   * Gets the order of the state in which the specified player last acted.
+   * The actions since then are getHistoryAction(getLastTurn(player)+1) to getHistoryAction(getOrder()-1).
+   * @param player the index of the player
+   * @return the order of the state of the players last action, or -1 if they have not acted yet
+   **/
+  public int getLastTurn(int player){
+    if(order==0) return -1;
+    int turn = order-1-((order-1-player)%players.length+players.length)%players.length;
+    return turn<log.getStart()?-1:turn;
   }
 
   /**
@@ -227,23 +619,138 @@ public class State implements Cloneable{
    * */
   public Card previousCardPlayed(){
     try{
-      return previousState.hands[previousAction.getPlayer()][previousAction.getCard()];
+      return previous().hands[previousAction.getPlayer()][previousAction.getCard()];
     }
     catch(Exception e){return null;}
   }
 
 
   /** 
-   * Gets a clone of the discard stack
+   * Gets a clone of the discard stack.
+   * getDiscardView and getDiscardCount should be used where a copy is not needed.
    * @return a clone of the discard stack
    **/
   public Stack<Card> getDiscards(){return (Stack<Card>) discards.clone();}
 
+  /**
+   * Gives a read only view of the discards, without copying them.
+   * @return an unmodifiable list of the discarded cards, in the order they were discarded
+   **/
+  public List<Card> getDiscardView(){return Collections.unmodifiableList(discards);}
+
+  /**
+   * Gives the number of cards discarded, or incorrectly played
+   * @return the number of cards in the discards
+   **/
+  public int getDiscardCount(){return discards.size();}
+
+  /**
+   * Gives the number of discarded cards with the same colour and value as the given card
+   * @param c the card
+   * @return the number of copies of the card that have been discarded, or incorrectly played
+   **/
+  public int getDiscardCount(Card c){return discarded[c.getIndex()];}
+
+  /**
+   * Gives the number of discarded cards of the given colour and value
+   * @param c the colour
+   * @param value the value, from 1 to 5
+   * @return the number of copies of the card that have been discarded, or incorrectly played
+   **/
+  public int getDiscardCount(Colour c, int value){return discarded[Card.index(c,value)];}
+
+  /**
+   * Gives the number of cards with the same colour and value as the given card in the fireworks
+   * @param c the card
+   * @return 1 if the card has been played, and 0 otherwise
+   **/
+  public int getPlayedCount(Card c){return fireworks[c.getColour().ordinal()]>=c.getValue()?1:0;}
+
+  /**
+   * Gives the number of cards with the same colour and value as the given card that the observer can see in other players hands.
+   * For a global state, this is the number in all hands.
+   * @param c the card
+   * @return the number of copies of the card in the hands visible to the observer
+   **/
+  public int getVisibleCount(Card c){return visible[c.getIndex()];}
+
+  /**
+   * Gives the number of cards with the same colour and value as the given card that the observer has not seen,
+   * that is, the copies in the deck or the observers own hand.
+   * @param c the card
+   * @return the number of copies of the card that are not discarded, played, or visible to the observer
+   **/
+  public int getUnseenCount(Card c){
+    int i = c.getIndex();
+    return Card.count(i)-discarded[i]-visible[i]-getPlayedCount(c);
+  }
+
+  /**
+   * Writes the number of unseen cards of every identity, as given by getUnseenCount
+   * @param counts an array of at least Card.IDENTITIES entries, indexed by Card.getIndex
+   * @return the total number of unseen cards
+   **/
+  public int getUnseenCounts(int[] counts){
+    int total = 0;
+    for(int i = 0; i<Card.IDENTITIES; i++){
+      counts[i] = Card.count(i)-discarded[i]-visible[i]-(fireworks[i/5]>i%5?1:0);
+      total+=counts[i];
+    }
+    return total;
+  }
+
+  /**
+   * Gives the last discarded card
+   * @return the card most recently discarded or incorrectly played, or null if there are no discards
+   **/
+  public Card getDiscardTop(){return discards.isEmpty()?null:discards.peek();}
+
   /**
    * Get the stack of cards representing the specified firework
    * @return a clone of the stack of cards representing the firework of the given colour. The highest card is at the top of the stack.
    **/
-  public Stack<Card> getFirework(Colour c){return (Stack<Card>) fireworks.get(c).clone();}
+  public Stack<Card> getFirework(Colour c){
+    Stack<Card> fw = new Stack<Card>();
+    for(int v = 1; v<=fireworks[c.ordinal()]; v++) fw.push(Card.get(c,v));
+    return fw;
+  }
+
+  /**
+   * Gives the top card of the specified firework, without copying it
+   * @return the highest card in the firework of the given colour, or null if it is empty
+   **/
+  public Card getFireworkTop(Colour c){
+    int h = fireworks[c.ordinal()];
+    return h==0?null:Card.get(c,h);
+  }
+
+  /**
+   * Get the number of cards in the specified firework
+   * @return the value of the highest card in the firework of the given colour, or 0 if it is empty
+   **/
+  public int getFireworkHeight(Colour c){return fireworks[c.ordinal()];}
+
+  /**
+   * Get the value of the next card that can be played on the specified firework
+   * @return the value of the card that can be played on the firework of the given colour, or -1 if it is complete
+   **/
+  public int getNextPlayable(Colour c){
+    int h = fireworks[c.ordinal()];
+    return h==5?-1:h+1;
+  }
+
+  /**
+   * Tests whether a card can be played
+   * @param c the card
+   * @return true if the card is the next card of the firework of its colour
+   **/
+  public boolean isPlayable(Card c){return fireworks[c.getColour().ordinal()]==c.getValue()-1;}
+
+  /**
+   * Get the number of fireworks that have been completed
+   * @return the number of fireworks with all 5 cards
+   **/
+  public int getCompletedFireworks(){return completed;}
 
   /**
    * Get the number of hint tokens available
@@ -293,11 +800,7 @@ public class State implements Cloneable{
    * @return the sum of the highest value cards in each firework
    **/
   public int getScore(){
-    int score = 0;
-    if(fuse==0) return 0;
-    for(Colour c: Colour.values()) 
-      if(!fireworks.get(c).isEmpty())score+=fireworks.get(c).peek().getValue();
-    return score;
+    return fuse==0?0:played;
   }
 
   /**
@@ -305,7 +808,118 @@ public class State implements Cloneable{
    * @return true if all fireworks have been made, the deck has run out, or a fues has exploded.
    **/
   public boolean gameOver(){
-    return ((finalAction!=-1 &&order==finalAction+1) || fuse == 0 || getScore()==25);
+    return over;
+  }
+
+  /**
+   * Gives a 64 bit Zobrist key of the position: the hands the observer can see, the fireworks, the discards (as counts of each card),
+   * the tokens, the next player, the observer, and once the deck is empty, the number of turns left.
+   * States in the same position have the same key, however they were reached, and different positions
+   * have different keys with high probability, so keys can index a TranspositionTable.
+   * The key is updated incrementally in each transition, so this takes constant time.
+   * @return the key of the position
+   **/
+  public long getKey(){
+    return finalAction==-1?key:key^Zobrist.FINAL[Math.max(0, finalAction+1-order)];
+  }
+
+  /**
+   * Tests whether two states are in the same position, as described by getKey.
+   * Unlike equals, this ignores the history of the states and the names of the players.
+   * @param other the state to compare
+   * @return true if the states have the same position
+   **/
+  public boolean samePosition(State other){
+    if(other==this) return true;
+    if(other==null || getKey()!=other.getKey() || observer!=other.observer || hints!=other.hints || fuse!=other.fuse
+        || nextPlayer!=other.nextPlayer || hands.length!=other.hands.length 
+        || (finalAction==-1?other.finalAction!=-1:finalAction-order!=other.finalAction-other.order)) return false;
+    if(!Arrays.equals(fireworks, other.fireworks) || !Arrays.equals(discarded, other.discarded)) return false;
+    for(int p = 0; p<hands.length; p++)
+      if(p!=observer && !Arrays.equals(hands[p], other.hands[p])) return false;
+    return true;
+  }
+
+  /**
+   * Produces a copy of the state that shares its players, hands, discards and fireworks with this state.
+   * States never modify these containers once created, so sharing them is safe.
+   **/
+  private State share(){
+    try{return (State) super.clone();}
+    catch(CloneNotSupportedException e){return null;}
+  }
+
+  //replaces a card, copying only the outer hands array and the affected hand
+  private void replaceCard(int player, int position, Card c){
+    hands = hands.clone();
+    hands[player] = hands[player].clone();
+    held = held.clone();
+    key^=Zobrist.hand(player, position, hands[player][position])^Zobrist.hand(player, position, c);
+    if(hands[player][position]!=null) held[hands[player][position].getIndex()]--;
+    if(c!=null) held[c.getIndex()]++;
+    visible = held;
+    hands[player][position] = c;
+    hintMasks = hintMasks.clone();
+    setHintMasks(player);
+  }
+
+  //counts the cards of each identity in the players hands
+  private void initCounts(){
+    held = new byte[Card.IDENTITIES];
+    for(Card[] hand: hands)
+      for(Card c: hand) if(c!=null) held[c.getIndex()]++;
+    visible = held;
+  }
+
+  //sets the observer, and removes the observers cards from the visible counts
+  private void setObserver(int observer){
+    this.observer = observer;
+    visible = held;
+    if(observer==-1) return;
+    visible = held.clone();
+    key^=Zobrist.OBSERVER[0]^Zobrist.OBSERVER[observer+1];
+    for(int i = 0; i<hands[observer].length; i++){
+      Card c = hands[observer][i];
+      if(c!=null) visible[c.getIndex()]--;
+      key^=Zobrist.hand(observer, i, c);
+    }
+  }
+
+  //computes the key of a global state from scratch
+  private void initKey(){
+    key = Zobrist.HINTS[hints]^Zobrist.FUSE[fuse]^Zobrist.NEXT[nextPlayer]^Zobrist.OBSERVER[0];
+    for(int p = 0; p<hands.length; p++)
+      for(int i = 0; i<hands[p].length; i++) key^=Zobrist.hand(p, i, hands[p][i]);
+    for(int c = 0; c<5; c++) key^=Zobrist.FIREWORK[6*c+fireworks[c]];
+    for(int i = 0; i<Card.IDENTITIES; i++) key^=Zobrist.DISCARD[4*i+discarded[i]];
+  }
+
+  //computes the hint masks for every player
+  private void initHintMasks(){
+    hintMasks = new int[10*players.length];
+    for(int p = 0; p<players.length; p++) setHintMasks(p);
+  }
+
+  //computes the hint masks for one player
+  private void setHintMasks(int player){
+    for(int k = 0; k<10; k++) hintMasks[10*player+k] = 0;
+    for(int i = 0; i<hands[player].length; i++){
+      Card c = hands[player][i];
+      if(c==null) continue;
+      hintMasks[10*player+c.getColour().ordinal()]|=1<<i;
+      hintMasks[10*player+4+c.getValue()]|=1<<i;
+    }
+  }
+
+  //adds a card to the discards of this new state, copying the discards it shares
+  @SuppressWarnings("unchecked")
+  private void discard(Card c){
+    discards = (Stack<Card>)discards.clone();
+    discards.push(c);
+    discarded = discarded.clone();
+    key^=Zobrist.DISCARD[4*c.getIndex()+discarded[c.getIndex()]];
+    discarded[c.getIndex()]++;
+    key^=Zobrist.DISCARD[4*c.getIndex()+discarded[c.getIndex()]];
   }
 
   /**
@@ -316,10 +930,12 @@ public class State implements Cloneable{
       State s = (State) super.clone();
       s.players = players.clone();
       s.discards = (Stack<Card>)discards.clone();
+      s.discarded = discarded.clone();
+      s.held = held.clone();
+      s.visible = (visible==held)?s.held:visible.clone();
       s.hands = (Card[][]) hands.clone();
       for(int i = 0; i<hands.length; i++) s.hands[i] = (Card[])s.hands[i].clone();
-      s.fireworks = (Map<Colour,Stack<Card>>)((HashMap)fireworks).clone();
-      for(Colour c: Colour.values()) s.fireworks.put(c,(Stack<Card>)fireworks.get(c).clone());
+      s.fireworks = fireworks.clone();
       return s;
     }
     catch(CloneNotSupportedException e){return null;}
@@ -332,27 +948,23 @@ public class State implements Cloneable{
    * and the last action.
    * */
   public String toString(){
-    String ret = "State: "+order+"\n";
-    ret+="Last move: "+previousAction+"\n";
-    ret+="Players' hands:\n";
+    StringBuilder sb = new StringBuilder(256);
+    sb.append("State: ").append(order).append('\n');
+    sb.append("Last move: ").append(previousAction).append('\n');
+    sb.append("Players' hands:\n");
     for(int i = 0; i<players.length; i++){
-      ret+=players[i]+" ("+i+"): ";
-      if(i == observer){
-        for(Card c: hands[i])ret+="-         ";
-        ret+="\n";
-        continue;
+      sb.append(players[i]).append(" (").append(i).append("): ");
+      for(Card c: hands[i]){
+        if(i == observer) sb.append("-         ");
+        else sb.append(c).append(' ');
       }
-      for(Card c: hands[i])ret+=c+" ";
-      ret+="\n";
+      sb.append('\n');
     }
-    ret+="Fireworks:\n";
+    sb.append("Fireworks:\n");
     for(Colour c: Colour.values())
-      ret+=c+"  "+(fireworks.get(c).isEmpty()? "-" : fireworks.get(c).peek()) +"\n";
-    ret+= "Hints: "+hints+"\nFuse: "+fuse+"\n";
-    return ret;
+      sb.append(c).append("  ").append(fireworks[c.ordinal()]==0? "-" : Card.get(c,fireworks[c.ordinal()])).append('\n');
+    sb.append("Hints: ").append(hints).append("\nFuse: ").append(fuse).append('\n');
+    return sb.toString();
   }
 
 }
-
-
-
@@ -0,0 +1,60 @@
+package hanabAI;
+
+/**
+ * Time limits for agents' moves, enforced by Hanabi.
+ * An agent may exceed the limit for a single move, or the total for all its moves in a game.
+ * When it does, the game is either forfeited (and abandoned with a score of -1), 
+ * or the agent's move is replaced by a fallback action, as are all its later moves in that game 
+ * while its late call is still running or its game time is spent.
+ * The default fallback gives a hint if it can, and otherwise discards or plays its first card.
+ * Subclasses may override fallback to choose a different action.
+ **/
+public class TimeBudget{
+
+  private long moveNanos;
+  private long gameNanos;
+  private boolean forfeit;
+
+  /**
+   * Creates a time budget
+   * @param moveMillis the time allowed for each move, in milliseconds, or 0 for no limit
+   * @param gameMillis the total time allowed for each agent's moves in a game, in milliseconds, or 0 for no limit
+   * @param forfeit true if the game is forfeited when an agent exceeds the budget, false to use the fallback action
+   * @throws IllegalArgumentException if either limit is negative
+   **/
+  public TimeBudget(long moveMillis, long gameMillis, boolean forfeit) throws IllegalArgumentException{
+    if(moveMillis<0 || gameMillis<0) throw new IllegalArgumentException("negative time limit");
+    this.moveNanos = moveMillis==0?Long.MAX_VALUE:moveMillis*1000000L;
+    this.gameNanos = gameMillis==0?Long.MAX_VALUE:gameMillis*1000000L;
+    this.forfeit = forfeit;
+  }
+
+  /**@return the time allowed for each move, in nanoseconds (Long.MAX_VALUE for no limit)**/
+  public long getMoveNanos(){return moveNanos;}
+
+  /**@return the total time allowed for an agent's moves in a game, in nanoseconds (Long.MAX_VALUE for no limit)**/
+  public long getGameNanos(){return gameNanos;}
+
+  /**@return true if exceeding the budget forfeits the game**/
+  public boolean isForfeit(){return forfeit;}
+
+  /**
+   * Chooses the action made in place of an agent that has exceeded its budget
+   * @param s the local state of the agent
+   * @return a legal action for the agent
+   * @throws IllegalActionException if the state has no legal action
+   **/
+  public Action fallback(State s) throws IllegalActionException{
+    int[] moves = new int[s.getActionSpace().maxLegalMoves()];
+    int count = s.getLegalMoves(moves);
+    if(count==0) throw new IllegalActionException("No legal action");
+    ActionSpace space = s.getActionSpace();
+    int move = moves[0];
+    for(int i = 0; i<count; i++){
+      ActionType t = space.getType(moves[i]);
+      if(t==ActionType.HINT_COLOUR || t==ActionType.HINT_VALUE) return s.getAction(moves[i]);
+      if(t==ActionType.DISCARD && space.getType(move)!=ActionType.DISCARD) move = moves[i];
+    }
+    return s.getAction(move);
+  }
+}
@@ -0,0 +1,248 @@
+package hanabAI;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A class for running many games of Hanabi in parallel.
+ * Each game is identified by a seed, which determines the deal, 
+ * so a range of seeds can be replayed with different agents.
+ * A SeededAgentFactory also has its agents seeded from the seed of the game, so their random choices are repeated too.
+ * Games are divided between the threads of a ForkJoinPool, 
+ * and each thread accumulates its own ScoreStats which are merged when the tasks join.
+ **/
+public class Tournament{
+
+  /**The number of games a task plays without splitting further**/
+  private static final int GRAIN = 64;
+  //mixed into a game seed to give the seeds of the agents
+  private static final long AGENT_SALT = 0x6A09E667F3BCC909L;
+
+  private AgentFactory factory;
+  private ForkJoinPool pool;
+  private HistoryPolicy history = HistoryPolicy.FULL;
+  private GameListener listener;
+  private TimeBudget budget;
+
+  /**
+   * Creates a tournament that uses all available processors
+   * @param factory the factory used to create the agents for each game
+   **/
+  public Tournament(AgentFactory factory){
+    this(factory, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a tournament with a given number of threads
+   * @param factory the factory used to create the agents for each game
+   * @param threads the number of worker threads
+   * @throws IllegalArgumentException if the factory is null or threads is not positive
+   **/
+  public Tournament(AgentFactory factory, int threads) throws IllegalArgumentException{
+    if(factory==null || threads<1) throw new IllegalArgumentException("incorrect parameters");
+    this.factory = factory;
+    this.pool = new ForkJoinPool(threads);
+  }
+
+  /**
+   * Sets the history policy of the games played, to limit the memory held by each game.
+   * @param history the policy for how many previous states each state keeps
+   **/
+  public void setHistoryPolicy(HistoryPolicy history){
+    if(history==null) throw new IllegalArgumentException("null policy");
+    this.history = history;
+  }
+
+  /**
+   * Sets a listener to receive the events of every game, identified by their seeds.
+   * The listener is called from all worker threads.
+   * @param listener the listener, or null for none
+   **/
+  public void setListener(GameListener listener){this.listener = listener;}
+
+  /**
+   * Sets time limits for the agents' moves in every game.
+   * @param budget the time budget, or null for no limit
+   **/
+  public void setTimeBudget(TimeBudget budget){this.budget = budget;}
+
+  /**
+   * Plays a game for each seed in a range.
+   * @param numPlayers the number of players in each game, from 2 to 5
+   * @param firstSeed the seed of the first game
+   * @param numGames the number of games to play, with seeds firstSeed, firstSeed+1, ...
+   * @return the combined statistics of all the games
+   * @throws IllegalArgumentException if the number of players is not between 2 and 5
+   **/
+  public ScoreStats run(int numPlayers, long firstSeed, int numGames) throws IllegalArgumentException{
+    if(numPlayers<2 || numPlayers>5 || numGames<0) throw new IllegalArgumentException("incorrect parameters");
+    return pool.invoke(new Games(numPlayers, firstSeed, numGames));
+  }
+
+  /**
+   * Plays the same range of seeds for every player count from 2 to 5.
+   * @param firstSeed the seed of the first game
+   * @param numGames the number of games to play for each player count
+   * @return an array of statistics, indexed by the number of players (entries 0 and 1 are null)
+   **/
+  public ScoreStats[] runAll(long firstSeed, int numGames){
+    ScoreStats[] results = new ScoreStats[6];
+    for(int n = 2; n<=5; n++) results[n] = run(n, firstSeed, numGames);
+    return results;
+  }
+
+  /**
+   * Stops the worker threads, once all running games have finished.
+   **/
+  public void shutdown(){pool.shutdown();}
+
+  /**
+   * Plays a single seeded game with new agents from the factory, and records the result.
+   * @param factory the factory used to create the agents
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal
+   * @param stats the ScoreStats the result and the agents' decision times are added to
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public static int playGame(AgentFactory factory, int numPlayers, long seed, ScoreStats stats){
+    return playGame(factory, numPlayers, seed, HistoryPolicy.FULL, stats);
+  }
+
+  /**
+   * Plays a single seeded game with new agents from the factory, and records the result.
+   * @param factory the factory used to create the agents
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal
+   * @param history the policy for how many previous states each state keeps
+   * @param stats the ScoreStats the result and the agents' decision times are added to
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public static int playGame(AgentFactory factory, int numPlayers, long seed, HistoryPolicy history, ScoreStats stats){
+    return playGame(factory, numPlayers, seed, history, null, stats);
+  }
+
+  /**
+   * Plays a single seeded game with new agents from the factory, and records the result.
+   * @param factory the factory used to create the agents
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal
+   * @param history the policy for how many previous states each state keeps
+   * @param listener a listener for the events of the game, or null
+   * @param stats the ScoreStats the result and the agents' decision times are added to
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public static int playGame(AgentFactory factory, int numPlayers, long seed, HistoryPolicy history, GameListener listener, ScoreStats stats){
+    return playGame(factory, numPlayers, seed, history, listener, null, stats);
+  }
+
+  /**
+   * Plays a single seeded game with new agents from the factory, and records the result.
+   * @param factory the factory used to create the agents
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal
+   * @param history the policy for how many previous states each state keeps
+   * @param listener a listener for the events of the game, or null
+   * @param budget the time limits for the agents' moves, or null for no limit
+   * @param stats the ScoreStats the result and the agents' decision times are added to
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public static int playGame(AgentFactory factory, int numPlayers, long seed, HistoryPolicy history, 
+      GameListener listener, TimeBudget budget, ScoreStats stats){
+    boolean[] bust = new boolean[1];
+    int score = playGame(factory, numPlayers, seed, history, listener, budget, stats.getLatencies(), bust, 0);
+    stats.add(score, bust[0]);
+    return score;
+  }
+
+  /**
+   * Plays a single seeded game with new agents from the factory.
+   * Every other way of playing a seeded game, here and in Comparison and Tuner, uses this method.
+   * If the factory is a SeededAgentFactory, the agent in each seat is created with a seed derived from the seed of the game,
+   * so the whole game can be repeated.
+   * @param factory the factory used to create the agents
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal, and the seeds of the agents
+   * @param history the policy for how many previous states each state keeps
+   * @param listener a listener for the events of the game, or null
+   * @param budget the time limits for the agents' moves, or null for no limit
+   * @param latencies the recorder the agents' decision times are added to, or null
+   * @param busts an array in which the fuse of the final state being 0 is recorded, or null
+   * @param index the index in busts to record at
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public static int playGame(AgentFactory factory, int numPlayers, long seed, HistoryPolicy history, GameListener listener, 
+      TimeBudget budget, LatencyRecorder latencies, boolean[] busts, int index){
+    Agent[] agents = new Agent[numPlayers];
+    SplittableRandom seeds = new SplittableRandom(seed^AGENT_SALT);
+    for(int i = 0; i<numPlayers; i++){
+      long agentSeed = seeds.nextLong();
+      agents[i] = factory instanceof SeededAgentFactory?((SeededAgentFactory)factory).newAgent(agentSeed):factory.newAgent();
+    }
+    Hanabi game = new Hanabi(agents, new Deck(seed), history);
+    game.setTimeBudget(budget);
+    game.setLatencyRecorder(latencies);
+    int score;
+    try{score = listener==null?game.play():game.play(listener, seed);}
+    catch(RuntimeException e){score = -1;}
+    if(busts!=null) busts[index] = game.getState().getFuseTokens()==0;
+    return score;
+  }
+
+  /**
+   * Plays a single seeded game with the factory, history policy, listener and time budget of this tournament.
+   * The agents' decision times are added to the latencies of the stats.
+   * @param numPlayers the number of players in the game
+   * @param seed the seed that determines the deal
+   * @param stats the ScoreStats the result is added to
+   * @return the score of the game, or -1 if it was abandoned
+   **/
+  public int playGame(int numPlayers, long seed, ScoreStats stats){
+    return playGame(factory, numPlayers, seed, history, listener, budget, stats);
+  }
+
+  /**A task playing a contiguous range of seeds, splitting in half until the range is small**/
+  private class Games extends RecursiveTask<ScoreStats>{
+    private static final long serialVersionUID = 1L;
+    private int numPlayers;
+    private long firstSeed;
+    private int numGames;
+
+    Games(int numPlayers, long firstSeed, int numGames){
+      this.numPlayers = numPlayers;
+      this.firstSeed = firstSeed;
+      this.numGames = numGames;
+    }
+
+    protected ScoreStats compute(){
+      if(numGames<=GRAIN){
+        ScoreStats stats = new ScoreStats();
+        for(int i = 0; i<numGames; i++) playGame(numPlayers, firstSeed+i, stats);
+        return stats;
+      }
+      int half = numGames/2;
+      Games left = new Games(numPlayers, firstSeed, half);
+      Games right = new Games(numPlayers, firstSeed+half, numGames-half);
+      left.fork();
+      ScoreStats stats = right.compute();
+      return stats.merge(left.join());
+    }
+  }
+
+  /**
+   * Runs a tournament of basic agents for each player count.
+   * The optional argument is the number of games per player count.
+   * */
+  public static void main(String[] args){
+    int games = args.length>0?Integer.parseInt(args[0]):10000;
+    Tournament t = new Tournament(new AgentFactory(){
+      public Agent newAgent(){return new agents.BasicAgent();}
+    });
+    long start = System.nanoTime();
+    ScoreStats[] results = t.runAll(0, games);
+    long time = System.nanoTime()-start;
+    t.shutdown();
+    for(int n = 2; n<=5; n++) System.out.println(n+" players\n"+results[n]+results[n].getLatencies());
+    System.out.printf("%d games in %.2fs%n", 4L*games, time/1e9);
+  }
+}
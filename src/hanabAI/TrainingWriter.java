@@ -0,0 +1,167 @@
+package hanabAI;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * A GameListener that writes a row of training data for every move: the local state of the player to move,
+ * encoded by a FeatureEncoder, with the move they made and the final score of the game.
+ * The file starts with the int MAGIC, the int VERSION and the int FeatureEncoder.WIDTH, 
+ * followed by rows of a fixed size, in big-endian order (the numpy dtype 
+ * <code>[('game','&gt;i8'),('turn','&gt;i4'),('move','&gt;i4'),('score','&gt;i4'),('x','&gt;f4',(WIDTH,))]</code>):
+ * <ul>
+ * <li>long: the game identifier</li>
+ * <li>int: the order of the state the move was made in</li>
+ * <li>int: the move, relative to the player making it (see FeatureEncoder.relativeMove)</li>
+ * <li>int: the final score, or -1 if the game was abandoned</li>
+ * <li>WIDTH floats: the features of the state</li>
+ * </ul>
+ * The rows of a game are collected for the thread playing it, since the score is only known at the end,
+ * and written with one lock per game, so memory is bounded by one game for each thread
+ * and the rows of each game are contiguous. No text is produced.
+ **/
+public class TrainingWriter implements GameListener{
+
+  /**The first int of a training file**/
+  public static final int MAGIC = 0x484E5452;
+  /**The version of the format**/
+  public static final int VERSION = 1;
+  /**The number of bytes in a row**/
+  public static final int ROW_BYTES = 20+4*FeatureEncoder.WIDTH;
+
+  private DataOutputStream out;
+  private IOException error;
+  private long rows;
+  private ThreadLocal<Record> records = new ThreadLocal<Record>(){
+    protected Record initialValue(){return new Record();}
+  };
+
+  //the rows of the game currently being played by a thread
+  private static class Record{
+    FeatureEncoder encoder = new FeatureEncoder();
+    HandKnowledge knowledge;
+    float[] features = new float[FeatureEncoder.WIDTH];
+    ByteBuffer rows = ByteBuffer.allocate(64*ROW_BYTES);
+    int count;
+  }
+
+  /**
+   * Creates a writer for a stream, and writes the file header
+   * @param out the stream the rows are written to
+   * @throws IOException if the header cannot be written
+   **/
+  public TrainingWriter(OutputStream out) throws IOException{
+    this.out = new DataOutputStream(new BufferedOutputStream(out, 1<<16));
+    this.out.writeInt(MAGIC);
+    this.out.writeInt(VERSION);
+    this.out.writeInt(FeatureEncoder.WIDTH);
+  }
+
+  /**
+   * Creates a writer for a file, and writes the file header
+   * @param file the name of the file, which is replaced if it exists
+   * @throws IOException if the file cannot be opened
+   **/
+  public TrainingWriter(String file) throws IOException{
+    this(new FileOutputStream(file));
+  }
+
+  /**
+   * Starts the rows of a game.
+   **/
+  public void gameStarted(long game, State initial){
+    Record r = records.get();
+    r.count = 0;
+    r.rows.clear();
+    r.knowledge = new HandKnowledge(initial.getPlayerCount());
+  }
+
+  /**
+   * Encodes the local state of the player who moved, and their move.
+   **/
+  public void actionPerformed(long game, State before, Action action, State after){
+    Record r = records.get();
+    try{
+      State local = before.hideHand(action.getPlayer());
+      r.knowledge.update(local);
+      r.encoder.encode(local, r.knowledge, r.features, 0);
+      if(r.rows.remaining()<ROW_BYTES){
+        ByteBuffer larger = ByteBuffer.allocate(2*r.rows.capacity());
+        r.rows.flip();
+        r.rows = larger.put(r.rows);
+      }
+      r.rows.putLong(game);
+      r.rows.putInt(before.getOrder());
+      r.rows.putInt(FeatureEncoder.relativeMove(before.getActionSpace(), before.getActionTable().getMove(action)));
+      r.rows.putInt(-1);
+      for(float f: r.features) r.rows.putFloat(f);
+      r.count++;
+    }
+    catch(IllegalActionException e){//cannot occur, as the action was legal
+      e.printStackTrace();
+      throw new RuntimeException("Could not encode the move: "+action);
+    }
+  }
+
+  /**
+   * Fills in the score, and writes the rows of the game.
+   **/
+  public void gameEnded(long game, State last, int score){
+    Record r = records.get();
+    for(int i = 0; i<r.count; i++) r.rows.putInt(i*ROW_BYTES+16, score);
+    r.knowledge = null;
+    synchronized(this){
+      if(error!=null) return;
+      try{
+        out.write(r.rows.array(), 0, r.rows.position());
+        rows+=r.count;
+      }
+      catch(IOException e){error = e;}
+    }
+  }
+
+  /**@return the number of rows written**/
+  public synchronized long getRows(){return rows;}
+
+  /**
+   * Tests whether an error has occurred writing the output
+   * @return the first error, or null if there has been none
+   **/
+  public synchronized IOException checkError(){return error;}
+
+  /**
+   * Writes any buffered output, and closes the stream.
+   * @throws IOException if an error occurred at any time writing the output
+   **/
+  public synchronized void close() throws IOException{
+    try{out.close();}
+    catch(IOException e){if(error==null) error = e;}
+    if(error!=null) throw error;
+  }
+
+  /**
+   * Writes the training data of a tournament of basic agents. 
+   * The arguments are the file name, and optionally the number of games (default 1000) and players (default 3).
+   * */
+  public static void main(String[] args) throws IOException{
+    int games = args.length>1?Integer.parseInt(args[1]):1000;
+    int players = args.length>2?Integer.parseInt(args[2]):3;
+    TrainingWriter writer = new TrainingWriter(args[0]);
+    Tournament t = new Tournament(new AgentFactory(){
+      public Agent newAgent(){return new agents.BasicAgent();}
+    });
+    t.setHistoryPolicy(HistoryPolicy.LOG_ONLY);
+    t.setListener(writer);
+    long start = System.nanoTime();
+    ScoreStats stats = t.run(players, 0, games);
+    long time = System.nanoTime()-start;
+    t.shutdown();
+    writer.close();
+    System.out.print(stats);
+    System.out.printf("%d rows in %.2fs%n", writer.getRows(), time/1e9);
+  }
+}
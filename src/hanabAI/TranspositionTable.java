@@ -0,0 +1,103 @@
+package hanabAI;
+
+/**
+ * A fixed size hash table of search results, keyed by 64 bit position keys such as State.getKey.
+ * Each entry holds an int value chosen by the search, the depth it was searched to, and the generation it was stored in.
+ * Entries are in buckets of two: the first keeps the deepest result of the current generation,
+ * and the second is always replaced, so recent results are kept as well as expensive ones.
+ * The table is lock-free, and may be shared by the threads of a search: each entry is two longs,
+ * the data and the key exclusive-or the data, so an entry torn by concurrent writes fails the key check and is read as missing.
+ * Lookups do not allocate: get returns the packed entry, whose fields are read with valueOf and depthOf.
+ **/
+public class TranspositionTable{
+
+  /**The entry returned by get when the key is not in the table**/
+  public static final long MISSING = -1L;
+
+  //for each slot, the key exclusive-or the data, and the data
+  private long[] table;
+  private int mask;
+  private volatile int generation = 1;
+
+  /**
+   * Creates an empty table
+   * @param capacity the number of entries, which is rounded up to a power of two, at least 2
+   * @throws IllegalArgumentException if capacity is not positive, or more than 2^29
+   **/
+  public TranspositionTable(int capacity) throws IllegalArgumentException{
+    if(capacity<1 || capacity>1<<29) throw new IllegalArgumentException("incorrect capacity");
+    int size = capacity<=2?2:Integer.highestOneBit(capacity-1)<<1;
+    table = new long[2*size];
+    mask = size/2-1;
+  }
+
+  /**@return the number of entries in the table**/
+  public int capacity(){return table.length/2;}
+
+  /**
+   * Looks up a key
+   * @param key the position key
+   * @return the entry for the key, or MISSING if it is not in the table
+   **/
+  public long get(long key){
+    int slot = 4*(mix(key)&mask);
+    for(int i = slot; i<slot+4; i+=2){
+      long data = table[i+1];
+      if(data!=0 && (table[i]^data)==key) return data;
+    }
+    return MISSING;
+  }
+
+  /**
+   * Stores a result, replacing an entry for the same key, or else one chosen by the replacement policy
+   * @param key the position key
+   * @param value the value to store
+   * @param depth the depth of the search that gave the value, from 0 to 32767. Deeper results are kept in preference.
+   **/
+  public void put(long key, int value, int depth){
+    int slot = 4*(mix(key)&mask);
+    long data = ((long)generation<<48)|((long)(depth&0x7FFF)<<32)|(value&0xFFFFFFFFL);
+    long first = table[slot+1];
+    int i;
+    if(first!=0 && (table[slot]^first)==key || (table[slot+2]^table[slot+3])!=key 
+        && (first==0 || generationOf(first)!=generation || depthOf(first)<=depth)) i = slot;
+    else i = slot+2;
+    table[i+1] = data;
+    table[i] = key^data;
+  }
+
+  /**
+   * Starts a new generation, so entries from earlier searches are replaced in preference, whatever their depth
+   **/
+  public void newGeneration(){generation = (generation&0x7FFF)+1;}
+
+  /**
+   * Removes every entry
+   **/
+  public void clear(){
+    java.util.Arrays.fill(table, 0);
+    generation = 1;
+  }
+
+  /**
+   * @param entry an entry returned by get
+   * @return the value stored
+   **/
+  public static int valueOf(long entry){return (int)entry;}
+
+  /**
+   * @param entry an entry returned by get
+   * @return the depth stored
+   **/
+  public static int depthOf(long entry){return (int)(entry>>>32)&0x7FFF;}
+
+  //the generation of an entry
+  private static int generationOf(long entry){return (int)(entry>>>48);}
+
+  //spreads the bits of a key, as keys from other sources may not be uniformly random
+  private static int mix(long key){
+    key^=key>>>33;
+    key*=0xFF51AFD7ED558CCDL;
+    return (int)(key^(key>>>33));
+  }
+}
@@ -0,0 +1,38 @@
+package hanabAI;
+
+/**
+ * An interface for agents whose strategy depends on numeric parameters, so they can be tuned by a Tuner.
+ * Each parameter is a real number between a lower and an upper bound.
+ * Discrete choices, such as the order in which rules are tried, can be given as real priorities.
+ * Parameters are set on a new agent, before it plays its first game.
+ * */
+public interface Tunable{
+
+  /**
+   * @return the names of the parameters, in the order used by the other methods
+   * */
+  public String[] getParameterNames();
+
+  /**
+   * @return the smallest value of each parameter
+   * */
+  public double[] getLowerBounds();
+
+  /**
+   * @return the largest value of each parameter
+   * */
+  public double[] getUpperBounds();
+
+  /**
+   * @return a copy of the current values of the parameters
+   * */
+  public double[] getParameters();
+
+  /**
+   * Sets the parameters
+   * @param parameters a value for each parameter, within its bounds
+   * @throws IllegalArgumentException if the wrong number of values is given, or a value is out of bounds
+   * */
+  public void setParameters(double[] parameters) throws IllegalArgumentException;
+
+}
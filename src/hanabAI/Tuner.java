@@ -0,0 +1,380 @@
+package hanabAI;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A parallel tuner for the parameters of Tunable agents, using a separable evolution strategy.
+ * Each generation samples a population of parameter vectors around a mean, in mirrored pairs,
+ * with a step size for each parameter (parameters are scaled to between 0 and 1 by their bounds).
+ * Every member of the population plays the same seeded deals, with the same agent seeds, 
+ * so the comparison between members is not swamped by the luck of the deal.
+ * The mean moves to the weighted recombination of the better half of the population, 
+ * and each step size grows or shrinks with the spread of the selected steps in its direction.
+ * Games are played in parallel on a ForkJoinPool, in rounds of a few deals for the whole population,
+ * and a generation stops early, with every member having played the same deals, once its wall-clock budget is spent.
+ * All random choices come from the seed and the generation number, 
+ * and the mean and step sizes can be saved to a checkpoint file after each generation,
+ * so an interrupted run resumes where it stopped.
+ **/
+public class Tuner{
+
+  /**The number of games a task plays without splitting further**/
+  private static final int GRAIN = 4;
+  //the number of deals each member plays in a round, between checks of the time budget
+  private static final int ROUND = 16;
+  //the rate the step sizes adapt at, and their limits
+  private static final double LEARNING_RATE = 0.2;
+  private static final double MIN_STEP = 0.01;
+  private static final double MAX_STEP = 0.5;
+
+  private SeededAgentFactory factory;
+  private ForkJoinPool pool;
+  private int numPlayers;
+  private String[] names;
+  private double[] lower;
+  private double[] upper;
+  private int population;
+  private int games = 256;
+  private long generationMillis;
+  private String checkpoint;
+  private long seed;
+  private int generation;
+  //the mean and step sizes, scaled to [0,1]
+  private double[] mean;
+  private double[] step;
+  //the results of the last generation
+  private double meanFitness;
+  private double bestFitness;
+  private double[] best;
+  private int deals;
+
+  /**
+   * Creates a tuner that uses all available processors
+   * @param factory a factory for the agents to tune, which must be Tunable
+   * @param numPlayers the number of players in each game, from 2 to 5
+   * @param seed the seed for the deals and the sampling of parameters
+   * @throws IllegalArgumentException if the factory is null, its agents are not Tunable, or the number of players is not between 2 and 5
+   **/
+  public Tuner(SeededAgentFactory factory, int numPlayers, long seed) throws IllegalArgumentException{
+    this(factory, numPlayers, seed, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a tuner with a given number of threads.
+   * The search starts from the parameters of a new agent, with a step size of 0.2 of the range of each parameter.
+   * @param factory a factory for the agents to tune, which must be Tunable
+   * @param numPlayers the number of players in each game, from 2 to 5
+   * @param seed the seed for the deals and the sampling of parameters
+   * @param threads the number of worker threads
+   * @throws IllegalArgumentException if the factory is null, its agents are not Tunable, 
+   * the number of players is not between 2 and 5, or threads is not positive
+   **/
+  public Tuner(SeededAgentFactory factory, int numPlayers, long seed, int threads) throws IllegalArgumentException{
+    if(factory==null || numPlayers<2 || numPlayers>5 || threads<1) throw new IllegalArgumentException("incorrect parameters");
+    Agent a = factory.newAgent(seed);
+    if(!(a instanceof Tunable)) throw new IllegalArgumentException("Agents are not Tunable");
+    Tunable t = (Tunable)a;
+    this.factory = factory;
+    this.numPlayers = numPlayers;
+    this.seed = seed;
+    this.pool = new ForkJoinPool(threads);
+    names = t.getParameterNames();
+    lower = t.getLowerBounds();
+    upper = t.getUpperBounds();
+    mean = scale(t.getParameters());
+    step = new double[names.length];
+    Arrays.fill(step, 0.2);
+    population = 2*(2+(int)(1.5*Math.log(names.length)));
+  }
+
+  /**
+   * Sets the number of parameter vectors sampled in each generation
+   * @param population an even number, at least 4 (the default is about 4+3ln(n) for n parameters)
+   * @throws IllegalArgumentException if the population is odd or less than 4
+   **/
+  public void setPopulation(int population) throws IllegalArgumentException{
+    if(population<4 || population%2!=0) throw new IllegalArgumentException("Population must be even, and at least 4");
+    this.population = population;
+  }
+
+  /**
+   * Sets the number of deals each member of a generation plays
+   * @param games the number of deals (default 256)
+   * @throws IllegalArgumentException if games is not positive
+   **/
+  public void setGames(int games) throws IllegalArgumentException{
+    if(games<1) throw new IllegalArgumentException("Games must be positive");
+    this.games = games;
+  }
+
+  /**
+   * Sets a wall-clock limit for each generation. 
+   * Once it passes, the generation finishes the round of deals it is playing, and is scored on the deals played.
+   * @param millis the limit in milliseconds, or 0 for no limit (the default)
+   **/
+  public void setGenerationMillis(long millis){this.generationMillis = Math.max(0, millis);}
+
+  /**
+   * Sets a file the state of the search is saved to after each generation. 
+   * If the file exists, the search resumes from it.
+   * @param file the name of the file, or null to stop saving
+   * @throws IOException if the file exists and cannot be read, or is for different parameters
+   **/
+  public void setCheckpoint(String file) throws IOException{
+    checkpoint = file;
+    if(file==null || !Files.exists(Paths.get(file))) return;
+    Properties p = new Properties();
+    InputStream in = new FileInputStream(file);
+    try{p.load(in);}
+    finally{in.close();}
+    if(!String.join(",", names).equals(p.getProperty("names")) || !String.valueOf(numPlayers).equals(p.getProperty("players")))
+      throw new IOException("Checkpoint is for different parameters");
+    try{
+      seed = Long.parseLong(p.getProperty("seed"));
+      generation = Integer.parseInt(p.getProperty("generation"));
+      mean = parse(p.getProperty("mean"));
+      step = parse(p.getProperty("step"));
+    }
+    catch(RuntimeException e){throw new IOException("Corrupt checkpoint: "+e);}
+  }
+
+  /**
+   * Runs one generation: samples the population, plays its games, and moves the mean and step sizes.
+   * The checkpoint, if set, is then saved.
+   * @return the mean fitness (the mean score, counting abandoned games as 0) of the population
+   * @throws IOException if the checkpoint cannot be saved
+   **/
+  public double step() throws IOException{
+    int n = names.length;
+    SplittableRandom rand = new SplittableRandom(seed^(generation*0x9E3779B97F4A7C15L));
+    double[][] z = new double[population][n];
+    double[][] x = new double[population][n];
+    SeededAgentFactory[] members = new SeededAgentFactory[population];
+    for(int k = 0; k<population; k++){
+      for(int j = 0; j<n; j++){
+        z[k][j] = k%2==0?gaussian(rand):-z[k-1][j];
+        x[k][j] = Math.min(1, Math.max(0, mean[j]+step[j]*z[k][j]));
+      }
+      members[k] = new Member(unscale(x[k]));
+    }
+    //play rounds of deals until all are played, or the time is up
+    long deadline = generationMillis>0?System.currentTimeMillis()+generationMillis:Long.MAX_VALUE;
+    long firstSeed = seed+(long)generation*games;
+    long[] totals = new long[population];
+    int[] scores = new int[population*ROUND];
+    deals = 0;
+    while(deals<games && (deals==0 || System.currentTimeMillis()<deadline)){
+      int round = Math.min(ROUND, games-deals);
+      pool.invoke(new Games(members, firstSeed+deals, round, 0, population*round, scores));
+      for(int i = 0; i<population*round; i++) totals[i/round]+=Math.max(0, scores[i]);
+      deals+=round;
+    }
+    //rank the population, and recombine the better half with logarithmic weights
+    Integer[] rank = new Integer[population];
+    for(int k = 0; k<population; k++) rank[k] = k;
+    final long[] t = totals;
+    Arrays.sort(rank, new java.util.Comparator<Integer>(){
+      public int compare(Integer a, Integer b){return Long.compare(t[b], t[a]);}
+    });
+    int mu = population/2;
+    double[] w = new double[mu];
+    double sum = 0;
+    for(int i = 0; i<mu; i++) sum+=w[i] = Math.log(mu+0.5)-Math.log(i+1);
+    for(int j = 0; j<n; j++){
+      double move = 0, spread = 0;
+      for(int i = 0; i<mu; i++){
+        double zj = z[rank[i]][j];
+        move+=w[i]/sum*zj;
+        spread+=w[i]/sum*zj*zj;
+      }
+      mean[j] = Math.min(1, Math.max(0, mean[j]+step[j]*move));
+      step[j] = Math.min(MAX_STEP, Math.max(MIN_STEP, step[j]*Math.sqrt(1-LEARNING_RATE+LEARNING_RATE*spread)));
+    }
+    long all = 0;
+    for(long total: totals) all+=total;
+    meanFitness = (double)all/(population*deals);
+    bestFitness = (double)totals[rank[0]]/deals;
+    best = unscale(x[rank[0]]);
+    generation++;
+    if(checkpoint!=null) save();
+    return meanFitness;
+  }
+
+  /**
+   * Runs generations until a number have been run in total, including any before a resumed checkpoint
+   * @param generations the total number of generations
+   * @return the parameters of the mean, after the last generation
+   * @throws IOException if the checkpoint cannot be saved
+   **/
+  public double[] run(int generations) throws IOException{
+    while(generation<generations) step();
+    return getMean();
+  }
+
+  /**@return the number of generations run**/
+  public int getGeneration(){return generation;}
+
+  /**@return the names of the parameters**/
+  public String[] getParameterNames(){return names.clone();}
+
+  /**@return the parameters at the mean of the search, the best estimate of the tuned parameters**/
+  public double[] getMean(){return unscale(mean);}
+
+  /**@return the step size of each parameter, as a fraction of its range**/
+  public double[] getStepSizes(){return step.clone();}
+
+  /**@return the mean fitness of the population of the last generation**/
+  public double getMeanFitness(){return meanFitness;}
+
+  /**@return the fitness of the best member of the last generation, which is biased upwards by selection**/
+  public double getBestFitness(){return bestFitness;}
+
+  /**@return the parameters of the best member of the last generation, or null if no generation has been run**/
+  public double[] getBest(){return best==null?null:best.clone();}
+
+  /**@return the number of deals each member played in the last generation**/
+  public int getDeals(){return deals;}
+
+  /**
+   * Stops the worker threads, once all running games have finished.
+   **/
+  public void shutdown(){pool.shutdown();}
+
+  //writes the checkpoint to a temporary file, then moves it into place
+  private void save() throws IOException{
+    Properties p = new Properties();
+    p.setProperty("names", String.join(",", names));
+    p.setProperty("players", String.valueOf(numPlayers));
+    p.setProperty("seed", String.valueOf(seed));
+    p.setProperty("generation", String.valueOf(generation));
+    p.setProperty("mean", format(mean));
+    p.setProperty("step", format(step));
+    p.setProperty("parameters", format(getMean()));
+    p.setProperty("fitness", String.valueOf(meanFitness));
+    Path target = Paths.get(checkpoint);
+    Path temp = Paths.get(checkpoint+".tmp");
+    OutputStream out = new FileOutputStream(temp.toFile());
+    try{p.store(out, "Tuner checkpoint");}
+    finally{out.close();}
+    try{Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);}
+    catch(AtomicMoveNotSupportedException e){Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);}
+  }
+
+  private static String format(double[] v){
+    StringBuilder sb = new StringBuilder();
+    for(int i = 0; i<v.length; i++) sb.append(i==0?"":" ").append(v[i]);
+    return sb.toString();
+  }
+
+  private double[] parse(String s){
+    String[] parts = s.trim().split(" +");
+    if(parts.length!=names.length) throw new IllegalArgumentException("expected "+names.length+" values");
+    double[] v = new double[parts.length];
+    for(int i = 0; i<v.length; i++) v[i] = Double.parseDouble(parts[i]);
+    return v;
+  }
+
+  private double[] scale(double[] p){
+    double[] x = new double[p.length];
+    for(int i = 0; i<p.length; i++) x[i] = upper[i]==lower[i]?0:(p[i]-lower[i])/(upper[i]-lower[i]);
+    return x;
+  }
+
+  private double[] unscale(double[] x){
+    double[] p = new double[x.length];
+    for(int i = 0; i<x.length; i++) p[i] = Math.min(upper[i], Math.max(lower[i], lower[i]+x[i]*(upper[i]-lower[i])));
+    return p;
+  }
+
+  //a standard normal sample, by the Box-Muller transform
+  private static double gaussian(SplittableRandom rand){
+    return Math.sqrt(-2*Math.log(1-rand.nextDouble()))*Math.cos(2*Math.PI*rand.nextDouble());
+  }
+
+  //a factory for the agents of one member of the population
+  private class Member implements SeededAgentFactory{
+    private double[] parameters;
+
+    Member(double[] parameters){this.parameters = parameters;}
+
+    public Agent newAgent(){return newAgent(new SplittableRandom().nextLong());}
+
+    public Agent newAgent(long agentSeed){
+      Agent a = factory.newAgent(agentSeed);
+      ((Tunable)a).setParameters(parameters);
+      return a;
+    }
+  }
+
+  /**A task playing a range of the games of a round, splitting in half until the range is small**/
+  private class Games extends RecursiveAction{
+    private static final long serialVersionUID = 1L;
+    private SeededAgentFactory[] members;
+    private long firstSeed;
+    private int round;
+    private int from;
+    private int to;
+    private int[] scores;
+
+    //game i is played by member i/round on seed firstSeed+i%round
+    Games(SeededAgentFactory[] members, long firstSeed, int round, int from, int to, int[] scores){
+      this.members = members;
+      this.firstSeed = firstSeed;
+      this.round = round;
+      this.from = from;
+      this.to = to;
+      this.scores = scores;
+    }
+
+    protected void compute(){
+      if(to-from<=GRAIN){
+        boolean[] busts = new boolean[to];
+        for(int i = from; i<to; i++) scores[i] = Comparison.playGame(members[i/round], numPlayers, firstSeed+i%round, busts, i);
+        return;
+      }
+      int mid = (from+to)/2;
+      invokeAll(new Games(members, firstSeed, round, from, mid, scores), new Games(members, firstSeed, round, mid, to, scores));
+    }
+  }
+
+  /**
+   * Tunes the basic agent. The optional arguments are the number of players (default 3), 
+   * the number of generations (default 20), the games per generation (default 256),
+   * the time limit per generation in seconds (default none), and a checkpoint file.
+   * */
+  public static void main(String[] args) throws IOException{
+    int players = args.length>0?Integer.parseInt(args[0]):3;
+    int generations = args.length>1?Integer.parseInt(args[1]):20;
+    Tuner t = new Tuner(new SeededAgentFactory(){
+      public Agent newAgent(){return new agents.BasicAgent();}
+      public Agent newAgent(long seed){return new agents.BasicAgent(seed);}
+    }, players, 0);
+    if(args.length>2) t.setGames(Integer.parseInt(args[2]));
+    if(args.length>3) t.setGenerationMillis(1000*Long.parseLong(args[3]));
+    if(args.length>4) t.setCheckpoint(args[4]);
+    String[] names = t.getParameterNames();
+    while(t.getGeneration()<generations){
+      long start = System.nanoTime();
+      t.step();
+      System.out.printf("generation %d: %d deals, mean %.3f, best %.3f, %.2fs%n", 
+          t.getGeneration(), t.getDeals(), t.getMeanFitness(), t.getBestFitness(), (System.nanoTime()-start)/1e9);
+    }
+    double[] p = t.getMean();
+    for(int i = 0; i<p.length; i++) System.out.printf("%s = %.4f%n", names[i], p[i]);
+    t.shutdown();
+  }
+}
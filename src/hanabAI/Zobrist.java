@@ -0,0 +1,43 @@
+package hanabAI;
+
+import java.util.SplittableRandom;
+
+/**
+ * The random 64 bit keys combined by exclusive or to give the Zobrist key of a State (see State.getKey).
+ * There is a key for each card in each hand position, each firework height, each number of discarded copies of each card,
+ * each number of hint and fuse tokens, each next player and observer, and each number of turns left once the deck is empty.
+ * A move changes only a few of these, so the key of a state is updated incrementally from the key of the state before it.
+ * The keys are generated from a fixed seed, so they are the same in every run.
+ **/
+final class Zobrist{
+
+  private Zobrist(){}
+
+  /**The key of card i in position j of player p is HAND[(5*p+j)*25+i]**/
+  static final long[] HAND = new long[25*Card.IDENTITIES];
+  /**The key of a firework of colour c with height h is FIREWORK[6*c+h]**/
+  static final long[] FIREWORK = new long[30];
+  /**The key of k discarded copies of card i is DISCARD[4*i+k]**/
+  static final long[] DISCARD = new long[4*Card.IDENTITIES];
+  /**The keys for 0 to 8 hint tokens**/
+  static final long[] HINTS = new long[9];
+  /**The keys for 0 to 3 fuse tokens**/
+  static final long[] FUSE = new long[4];
+  /**The keys for each next player**/
+  static final long[] NEXT = new long[5];
+  /**The keys for each observer, offset by one so OBSERVER[0] is a global state**/
+  static final long[] OBSERVER = new long[6];
+  /**The keys for the number of turns left, once the final action is set**/
+  static final long[] FINAL = new long[6];
+
+  static{
+    SplittableRandom r = new SplittableRandom(0x5A0B7157L);
+    for(long[] keys: new long[][]{HAND, FIREWORK, DISCARD, HINTS, FUSE, NEXT, OBSERVER, FINAL})
+      for(int i = 0; i<keys.length; i++) keys[i] = r.nextLong();
+  }
+
+  /**@return the key of a card in a hand position, or 0 for an empty position**/
+  static long hand(int player, int position, Card c){
+    return c==null?0:HAND[(5*player+position)*Card.IDENTITIES+c.getIndex()];
+  }
+}